@@ -3,9 +3,21 @@ package com.anthonyhilyard.prism;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import com.anthonyhilyard.prism.item.ItemColorPrewarmer;
+import com.anthonyhilyard.prism.item.ItemColors;
+import com.anthonyhilyard.prism.text.AnimationClock;
+import com.anthonyhilyard.prism.util.ImageAnalysis;
+
+import net.minecraftforge.api.distmarker.Dist;
+import net.minecraftforge.client.event.ClientPlayerNetworkEvent;
+import net.minecraftforge.common.MinecraftForge;
+import net.minecraftforge.event.TickEvent.RenderTickEvent;
+import net.minecraftforge.eventbus.api.EventPriority;
 import net.minecraftforge.fml.IExtensionPoint;
 import net.minecraftforge.fml.ModLoadingContext;
 import net.minecraftforge.fml.common.Mod;
+import net.minecraftforge.fml.javafmlmod.FMLJavaModLoadingContext;
+import net.minecraftforge.fml.loading.FMLEnvironment;
 
 @Mod(Prism.MODID)
 public class Prism
@@ -16,5 +28,24 @@ public class Prism
 	public Prism()
 	{
 		ModLoadingContext.get().registerExtensionPoint(IExtensionPoint.DisplayTest.class, () -> new IExtensionPoint.DisplayTest(() -> "ANY", (remote, isServer) -> true));
+
+		if (FMLEnvironment.dist == Dist.CLIENT)
+		{
+			// All animated colors share this one clock.
+			MinecraftForge.EVENT_BUS.addListener(EventPriority.NORMAL, false, RenderTickEvent.class, AnimationClock::onRenderTick);
+
+			// Keep cached item colors up to date.
+			FMLJavaModLoadingContext.get().getModEventBus().addListener(ItemColors::onRegisterReloadListeners);
+			MinecraftForge.EVENT_BUS.addListener(ItemColors::onPlayerLoggingIn);
+			MinecraftForge.EVENT_BUS.addListener(ItemColors::onPlayerLoggingOut);
+			MinecraftForge.EVENT_BUS.addListener(EventPriority.NORMAL, false, RenderTickEvent.class, ItemColors::onRenderTick);
+
+			// Prewarming must start after the item color cache has been cleared for the new player.
+			MinecraftForge.EVENT_BUS.addListener(EventPriority.LOW, false, ClientPlayerNetworkEvent.LoggingIn.class, ItemColorPrewarmer::onPlayerLoggingIn);
+			MinecraftForge.EVENT_BUS.addListener(EventPriority.HIGH, false, ClientPlayerNetworkEvent.LoggingOut.class, ItemColorPrewarmer::onPlayerLoggingOut);
+
+			// Cached image colors are cleared when resources change.
+			FMLJavaModLoadingContext.get().getModEventBus().addListener(ImageAnalysis::onRegisterReloadListeners);
+		}
 	}
 }
@@ -0,0 +1,186 @@
+package com.anthonyhilyard.prism.item;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.anthonyhilyard.prism.Prism;
+
+import net.minecraft.world.item.Item;
+import net.minecraft.world.item.ItemStack;
+import net.minecraftforge.client.event.ClientPlayerNetworkEvent;
+import net.minecraftforge.registries.ForgeRegistries;
+
+/**
+ * Resolves the colors of every registered item in the background when joining a world, so item lists don't
+ * have to resolve thousands of colors the first time they are opened.  This is disabled by default.
+ */
+public class ItemColorPrewarmer
+{
+	private static boolean enabled = false;
+	private static int threadCount = Math.max(1, Math.min(Runtime.getRuntime().availableProcessors() / 2, 4));
+	private static ExecutorService executor = null;
+
+	// Set from when prewarming starts until every item has been resolved, including tooltips checked on the render thread.
+	private static boolean active = false;
+	private static boolean workersFinished = false;
+	private static int itemCount = 0;
+	private static long startedAt = 0;
+
+	public static void setEnabled(boolean enabled)
+	{
+		ItemColorPrewarmer.enabled = enabled;
+	}
+
+	public static boolean isEnabled()
+	{
+		return enabled;
+	}
+
+	/**
+	 * Sets the number of background threads used for prewarming.  Takes effect the next time prewarming starts.
+	 */
+	public static void setThreadCount(int threadCount)
+	{
+		ItemColorPrewarmer.threadCount = Math.max(threadCount, 1);
+	}
+
+	/**
+	 * Returns true until every item has been resolved, including items whose tooltips are still waiting to be checked on the render thread.
+	 */
+	public static synchronized boolean isRunning()
+	{
+		return active;
+	}
+
+	/**
+	 * Starts resolving the colors of the default stacks of all registered items in the background.
+	 * Item colors that need the item's tooltip are checked on the render thread within the budget set by {@link ItemColors#setPrewarmBudget},
+	 * after any items that are being shown.
+	 */
+	public static synchronized void start()
+	{
+		cancel();
+
+		final List<Item> items = List.copyOf(ForgeRegistries.ITEMS.getValues());
+		final int total = items.size();
+		final int chunkSize = Math.max(1, (total + threadCount * 4 - 1) / (threadCount * 4));
+		final AtomicInteger completed = new AtomicInteger(0);
+		final AtomicInteger deferred = new AtomicInteger(0);
+		final AtomicInteger nextReport = new AtomicInteger(1);
+		final long startTime = System.nanoTime();
+		final ExecutorService pool = Executors.newFixedThreadPool(threadCount, runnable ->
+		{
+			Thread thread = new Thread(runnable, "Prism Item Color Prewarm");
+			thread.setDaemon(true);
+			thread.setPriority(Thread.MIN_PRIORITY);
+			return thread;
+		});
+
+		Prism.LOGGER.info("Prewarming colors for {} items on {} threads.", total, threadCount);
+		for (int start = 0; start < total; start += chunkSize)
+		{
+			final List<Item> chunk = items.subList(start, Math.min(start + chunkSize, total));
+			pool.execute(() ->
+			{
+				for (Item item : chunk)
+				{
+					if (Thread.currentThread().isInterrupted())
+					{
+						return;
+					}
+
+					try
+					{
+						ItemStack stack = item.getDefaultInstance();
+						if (!stack.isEmpty() && ItemColors.prewarmColor(stack))
+						{
+							deferred.incrementAndGet();
+						}
+					}
+					catch (Exception e)
+					{
+						// Some items can't be resolved off the render thread, so they'll just be resolved when first used.
+						Prism.LOGGER.debug("Couldn't prewarm color for item {}.", item, e);
+					}
+				}
+
+				// Report progress in steps of 25%.
+				int done = completed.addAndGet(chunk.size());
+				int report = nextReport.get();
+				if (done >= total)
+				{
+					Prism.LOGGER.info("Resolved colors for {} items in {} ms, {} are waiting for their tooltips to be checked on the render thread.",
+									  total, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime), deferred.get());
+					finishWorkers(pool);
+				}
+				else if (done * 4 >= total * report && nextReport.compareAndSet(report, report + 1))
+				{
+					Prism.LOGGER.info("Prewarming item colors: {}/{} items done.", done, total);
+				}
+			});
+		}
+		pool.shutdown();
+		executor = pool;
+		active = true;
+		workersFinished = false;
+		itemCount = total;
+		startedAt = startTime;
+	}
+
+	private static synchronized void finishWorkers(ExecutorService pool)
+	{
+		// Workers from prewarming that has since been cancelled can still finish.
+		if (executor == pool)
+		{
+			workersFinished = true;
+			checkFinished();
+		}
+	}
+
+	/**
+	 * Reports that prewarming is finished once the background threads are done and no prewarmed tooltips are left to check.
+	 */
+	static synchronized void checkFinished()
+	{
+		if (active && workersFinished && ItemColors.getPrewarmQueueSize() == 0)
+		{
+			active = false;
+			Prism.LOGGER.info("Finished prewarming colors for {} items in {} ms.", itemCount, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedAt));
+		}
+	}
+
+	/**
+	 * Stops any prewarming that is currently in progress, including prewarmed tooltips waiting to be checked.
+	 * Items that are already being resolved may finish, but their colors are dropped if the item color cache has been cleared since they started.
+	 */
+	public static synchronized void cancel()
+	{
+		if (executor != null)
+		{
+			executor.shutdownNow();
+			ItemColors.clearPrewarmQueue();
+			if (active)
+			{
+				Prism.LOGGER.info("Cancelled item color prewarming.");
+			}
+			executor = null;
+			active = false;
+		}
+	}
+
+	public static void onPlayerLoggingIn(ClientPlayerNetworkEvent.LoggingIn event)
+	{
+		if (enabled)
+		{
+			start();
+		}
+	}
+
+	public static void onPlayerLoggingOut(ClientPlayerNetworkEvent.LoggingOut event)
+	{
+		cancel();
+	}
+}
@@ -0,0 +1,76 @@
+package com.anthonyhilyard.prism.item;
+
+import javax.annotation.Nullable;
+
+import net.minecraft.network.chat.Component;
+import net.minecraft.network.chat.TextColor;
+import net.minecraft.world.item.ItemStack;
+
+/**
+ * A single step in determining the color of an item.  Resolvers are run in order, and the first one to return a color wins.
+ * Resolvers can be registered with {@link ItemColors#registerResolver(String, ItemColorResolver)}.
+ */
+@FunctionalInterface
+public interface ItemColorResolver
+{
+	/**
+	 * Holds the name components of the item being resolved, so each one is only built once no matter how many resolvers use it.
+	 */
+	public static class Context
+	{
+		private final ItemStack item;
+		private Component displayName = null;
+		private Component hoverName = null;
+		private Component itemName = null;
+		private boolean itemNameResolved = false;
+
+		public Context(ItemStack item)
+		{
+			this.item = item;
+		}
+
+		public Component getDisplayName()
+		{
+			if (displayName == null)
+			{
+				displayName = item.getDisplayName();
+			}
+			return displayName;
+		}
+
+		public Component getHoverName()
+		{
+			if (hoverName == null)
+			{
+				hoverName = item.getHoverName();
+			}
+			return hoverName;
+		}
+
+		@Nullable
+		public Component getItemName()
+		{
+			if (!itemNameResolved)
+			{
+				itemName = item.getItem() != null ? item.getItem().getName(item) : null;
+				itemNameResolved = true;
+			}
+			return itemName;
+		}
+
+		@Nullable
+		public TextColor getRarityColor()
+		{
+			return getDisplayName().getStyle().getColor();
+		}
+	}
+
+	/**
+	 * Determines the color of the given item.
+	 * @param item The item stack.
+	 * @param context The name components of the item.
+	 * @return The color of the item, or null if this resolver can't determine it.
+	 */
+	@Nullable
+	public TextColor resolve(ItemStack item, Context context);
+}
@@ -6,17 +6,137 @@ import com.anthonyhilyard.prism.util.IColor;
 import com.anthonyhilyard.prism.util.WebColors;
 
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
 
+import com.google.common.collect.Lists;
+
+import it.unimi.dsi.fastutil.longs.Long2IntOpenHashMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectLinkedOpenHashMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
 import net.minecraft.client.Minecraft;
+import net.minecraft.nbt.CompoundTag;
+import net.minecraft.server.packs.resources.ResourceManagerReloadListener;
+import net.minecraft.world.item.Item;
 import net.minecraft.world.item.ItemStack;
 import net.minecraft.world.item.TooltipFlag;
 import net.minecraft.util.FormattedCharSink;
 import net.minecraft.network.chat.TextColor;
 import net.minecraft.network.chat.Component;
 import net.minecraft.network.chat.Style;
+import net.minecraftforge.client.event.ClientPlayerNetworkEvent;
+import net.minecraftforge.client.event.RegisterClientReloadListenersEvent;
+import net.minecraftforge.event.TickEvent;
+import net.minecraftforge.event.TickEvent.RenderTickEvent;
 
 public class ItemColors
 {
+	// Stored in the cache for items that don't have a color of their own, so they don't get resolved again.
+	private static final TextColor NO_COLOR = TextColor.fromRgb(0);
+
+	// Cache keys only hold a hash of the item's NBT, so each entry keeps a copy of the NBT to tell apart items whose hashes collide.
+	private static record CachedColor(CompoundTag tag, TextColor color) {}
+	private static final Long2ObjectLinkedOpenHashMap<CachedColor> colorCache = new Long2ObjectLinkedOpenHashMap<>();
+	private static int cacheSize = 4096;
+	private static long cacheHits = 0;
+	private static long cacheMisses = 0;
+
+	// Incremented whenever the cache is cleared, so colors resolved before then by other threads aren't stored afterwards.
+	private static volatile int cacheGeneration = 0;
+
+	// Items waiting for their tooltip to be checked, along with the color that is returned until that happens.
+	private static record PendingItem(ItemStack item, TextColor color) {}
+	private static final Long2ObjectLinkedOpenHashMap<PendingItem> pendingItems = new Long2ObjectLinkedOpenHashMap<>();
+	private static long deferredBudgetNanos = 2_000_000L;
+
+	// Prewarmed items waiting for their tooltip to be checked.  These have their own smaller budget, and only use it after items that are being shown.
+	private static final Long2ObjectLinkedOpenHashMap<PendingItem> prewarmItems = new Long2ObjectLinkedOpenHashMap<>();
+	private static long prewarmBudgetNanos = 500_000L;
+
+	/**
+	 * Usage statistics for a single item color resolver.
+	 * @param name The name of the resolver.
+	 * @param calls The number of times the resolver has run.
+	 * @param hits The number of times the resolver found a color.
+	 * @param nanos The total time spent in the resolver, in nanoseconds.
+	 */
+	public static record ResolverStats(String name, long calls, long hits, long nanos) {}
+
+	private static class Stage
+	{
+		private final String name;
+		private final ItemColorResolver resolver;
+		private final LongAdder calls = new LongAdder();
+		private final LongAdder hits = new LongAdder();
+		private final LongAdder nanos = new LongAdder();
+
+		private Stage(String name, ItemColorResolver resolver)
+		{
+			this.name = name;
+			this.resolver = resolver;
+		}
+
+		private TextColor resolve(ItemStack item, ItemColorResolver.Context context)
+		{
+			long startTime = System.nanoTime();
+			TextColor result = resolver.resolve(item, context);
+			nanos.add(System.nanoTime() - startTime);
+			calls.increment();
+			if (result != null)
+			{
+				hits.increment();
+			}
+			return result;
+		}
+
+		private ResolverStats getStats()
+		{
+			return new ResolverStats(name, calls.sum(), hits.sum(), nanos.sum());
+		}
+	}
+
+	// Resolvers that only look at the item's name, in order of priority.  Registered resolvers are added to the front.
+	private static final List<Stage> nameStages = new CopyOnWriteArrayList<>(List.of(
+		// If there is a color style stored per-character, use the first one found.
+		new Stage("name_style", (item, context) ->
+		{
+			ColorCollector colorCollector = new ColorCollector();
+			context.getHoverName().getVisualOrderText().accept(colorCollector);
+			return colorCollector.getColor();
+		}),
+
+		// If there is a color code specified for the item name, use that.
+		new Stage("formatting_code", (item, context) -> TextColors.findFirstColorCode(context.getHoverName())),
+
+		// If the item has a special hover name TextColor (Stored in NBT), use that.
+		new Stage("hover_name", (item, context) -> !context.getHoverName().getStyle().isEmpty() ? context.getHoverName().getStyle().getColor() : null),
+
+		// Some mods override the getName() method of the Item class, so grab that TextColor if it's there.
+		new Stage("item_name", (item, context) -> context.getItemName() != null && context.getItemName().getStyle() != null ? context.getItemName().getStyle().getColor() : null),
+
+		// TextColor based on rarity value.
+		new Stage("rarity", (item, context) -> context.getRarityColor())
+	));
+
+	// Resolvers registered for specific items, which run before all others.
+	private static final Map<Item, List<Stage>> itemStages = new ConcurrentHashMap<>();
+
+	// Used if we haven't found a color or we're still using the rarity color.
+	// This is slow, so it can be deferred and the result is always cached.
+	private static final Stage tooltipStage = new Stage("tooltip", (item, context) ->
+	{
+		Minecraft mc = Minecraft.getInstance();
+		List<Component> lines = item.getTooltipLines(mc.player, TooltipFlag.Default.ADVANCED);
+		if (!lines.isEmpty() && lines.get(0).getStyle().getColor() != null)
+		{
+			return lines.get(0).getStyle().getColor();
+		}
+		return null;
+	});
+
 	private static class ColorCollector implements FormattedCharSink
 	{
 		private TextColor color = null;
@@ -35,67 +155,500 @@ public class ItemColors
 		public TextColor getColor() { return color; }
 	}
 
+	/**
+	 * Returns the color for the given item, using the cached color if this item has been seen before.
+	 * @param item The item stack.
+	 * @param defaultColor The color to use if the item doesn't have a color of its own.
+	 * @return The item's color, the default color, or transparent if the default color is null.
+	 */
 	public static TextColor getColorForItem(ItemStack item, TextColor defaultColor)
 	{
-		TextColor result = null;
+		TextColor result = getCachedColor(item, getCacheKey(item));
+		// Cached colors are always shared, even animated ones, so hand out copies that callers are free to modify.
+		return DynamicColor.modifiable(result != NO_COLOR ? result : getDefaultColor(defaultColor));
+	}
 
-		// TextColor based on rarity value.
-		result = item.getDisplayName().getStyle().getColor();
+	/**
+	 * Returns the colors for all of the given items as ARGB values.  Identical stacks are only resolved once,
+	 * so this is much faster than calling {@link #getColorForItem(ItemStack, TextColor)} for each item in large item lists.
+	 * @param items The item stacks.
+	 * @param defaultColor The color to use for items that don't have a color of their own.
+	 * @return An array of colors in the same order as the given items.
+	 */
+	public static int[] getColorsForItems(List<ItemStack> items, TextColor defaultColor)
+	{
+		int[] results = new int[items.size()];
+		getColorsForItems(items, defaultColor, results);
+		return results;
+	}
 
-		// Some mods override the getName() method of the Item class, so grab that TextColor if it's there.
-		if (item.getItem() != null &&
-			item.getItem().getName(item) != null &&
-			item.getItem().getName(item).getStyle() != null &&
-			item.getItem().getName(item).getStyle().getColor() != null)
+	/**
+	 * Fills the given array with the colors for all of the given items as ARGB values.
+	 * @param items The item stacks.
+	 * @param defaultColor The color to use for items that don't have a color of their own.
+	 * @param results The array to fill, which must be at least as long as the list of items.
+	 */
+	public static void getColorsForItems(List<ItemStack> items, TextColor defaultColor, int[] results)
+	{
+		final int defaultValue = getDefaultColor(defaultColor).getValue();
+		final Long2IntOpenHashMap resolvedColors = new Long2IntOpenHashMap(items.size());
+		final Long2ObjectOpenHashMap<CompoundTag> resolvedTags = new Long2ObjectOpenHashMap<>(items.size());
+		for (int i = 0; i < items.size(); i++)
 		{
-			result = item.getItem().getName(item).getStyle().getColor();
+			final ItemStack item = items.get(i);
+			final long key = getCacheKey(item);
+			if (resolvedColors.containsKey(key) && Objects.equals(resolvedTags.get(key), item.getTag()))
+			{
+				results[i] = resolvedColors.get(key);
+			}
+			else
+			{
+				TextColor color = getCachedColor(item, key);
+				results[i] = color != NO_COLOR ? color.getValue() : defaultValue;
+				resolvedColors.put(key, results[i]);
+				resolvedTags.put(key, item.getTag());
+			}
 		}
+	}
 
-		// If the item has a special hover name TextColor (Stored in NBT), use that.
-		if (!item.getHoverName().getStyle().isEmpty() && item.getHoverName().getStyle().getColor() != null)
+	/**
+	 * Returns the color for the given item from the cache, resolving and caching it first if needed.
+	 * @return The item's color, or NO_COLOR if it doesn't have one.
+	 */
+	private static TextColor getCachedColor(ItemStack item, long key)
+	{
+		final int generation = cacheGeneration;
+		TextColor result;
+		synchronized (colorCache)
 		{
-			result = item.getHoverName().getStyle().getColor();
+			result = getCacheEntry(item, key);
+			if (result != null)
+			{
+				cacheHits++;
+			}
+			else
+			{
+				cacheMisses++;
+			}
 		}
 
-		// If there is a color code specified for the item name, use that.
-		TextColor formattingColor = TextColors.findFirstColorCode(item.getHoverName());
-		if (formattingColor != null)
+		if (result == null)
 		{
-			result = formattingColor;
+			final ItemColorResolver.Context context = new ItemColorResolver.Context(item);
+			result = resolveNameColor(item, context);
+			if (needsTooltipColor(context, result))
+			{
+				result = resolveTooltipColor(item, context, result);
+			}
+			result = cacheColor(key, item.getTag(), result, generation);
 		}
 
-		// Finally, if there is a color style stored per-character, use the first one found.
-		ColorCollector colorCollector = new ColorCollector();
-		item.getHoverName().getVisualOrderText().accept(colorCollector);
-		if (colorCollector.getColor() != null)
+		return result;
+	}
+
+	/**
+	 * Returns the cached color for the given item, or null if there isn't one.  Must be called while holding the cache lock.
+	 */
+	private static TextColor getCacheEntry(ItemStack item, long key)
+	{
+		CachedColor entry = colorCache.getAndMoveToLast(key);
+		return entry != null && Objects.equals(entry.tag(), item.getTag()) ? entry.color() : null;
+	}
+
+	/**
+	 * Returns true if the given item's color is cached, without counting it as a use of the cached color.
+	 */
+	private static boolean isCached(ItemStack item, long key)
+	{
+		synchronized (colorCache)
 		{
-			result = colorCollector.getColor();
+			CachedColor entry = colorCache.get(key);
+			return entry != null && Objects.equals(entry.tag(), item.getTag());
 		}
+	}
 
-		// If we haven't found a color or we're still using the rarity color, check the actual tooltip.
-		// This is slow, so it better get cached externally!
-		if (result == null || result.equals(item.getDisplayName().getStyle().getColor()))
+	/**
+	 * Stores the resolved color for an item in the cache, and returns the value that was stored.
+	 * The color isn't stored if the cache has been cleared since it started being resolved.
+	 * @param generation The value of {@link #cacheGeneration} from before the color was resolved.
+	 */
+	private static TextColor cacheColor(long key, CompoundTag tag, TextColor color, int generation)
+	{
+		TextColor result = color != null ? DynamicColor.shared((IColor)color) : NO_COLOR;
+		CachedColor entry = new CachedColor(tag != null ? tag.copy() : null, result);
+		synchronized (colorCache)
 		{
-			Minecraft mc = Minecraft.getInstance();
-			List<Component> lines = item.getTooltipLines(mc.player, TooltipFlag.Default.ADVANCED);
-			if (!lines.isEmpty() && lines.get(0).getStyle().getColor() != null)
+			if (generation != cacheGeneration)
 			{
-				result = lines.get(0).getStyle().getColor();
+				return result;
+			}
+
+			colorCache.putAndMoveToLast(key, entry);
+			while (colorCache.size() > cacheSize)
+			{
+				colorCache.removeFirst();
 			}
 		}
+		return result;
+	}
 
+	private static TextColor getDefaultColor(TextColor defaultColor)
+	{
 		// Fallback to the default TextColor if we somehow haven't found a single valid TextColor.
-		if (result == null)
+		// If the default color is null, just return transparent.
+		return defaultColor != null ? DynamicColor.shared((IColor)defaultColor) : (TextColor)WebColors.getColor("transparent");
+	}
+
+	/**
+	 * Returns the color for the given item without ever building the item's tooltip on the calling thread.
+	 * If the tooltip needs to be checked, the best color found without it is returned immediately, and the tooltip is checked
+	 * over the next few frames.  Once that is done, this method and {@link #getColorForItem(ItemStack, TextColor)} return the final color.
+	 * @param item The item stack.
+	 * @param defaultColor The color to use if the item doesn't have a color of its own.
+	 * @return The item's color, the default color, or transparent if the default color is null.
+	 */
+	public static TextColor getColorForItemDeferred(ItemStack item, TextColor defaultColor)
+	{
+		final long key = getCacheKey(item);
+		final int generation = cacheGeneration;
+		TextColor result;
+		synchronized (colorCache)
 		{
-			result = defaultColor;
+			result = getCacheEntry(item, key);
+			if (result != null)
+			{
+				cacheHits++;
+			}
 		}
 
-		// If the result is still null (default color is null), just return transparent.
 		if (result == null)
 		{
-			return (TextColor)WebColors.getColor("transparent");
+			PendingItem pendingItem;
+			synchronized (pendingItems)
+			{
+				pendingItem = pendingItems.get(key);
+			}
+
+			if (pendingItem != null && Objects.equals(pendingItem.item().getTag(), item.getTag()))
+			{
+				result = pendingItem.color();
+			}
+			else
+			{
+				synchronized (colorCache)
+				{
+					cacheMisses++;
+				}
+
+				final ItemColorResolver.Context context = new ItemColorResolver.Context(item);
+				result = resolveNameColor(item, context);
+				if (needsTooltipColor(context, result))
+				{
+					// Check the tooltip later, and use what we've found so far until then.
+					result = result != null ? DynamicColor.shared((IColor)result) : NO_COLOR;
+					synchronized (pendingItems)
+					{
+						if (generation == cacheGeneration)
+						{
+							pendingItems.putAndMoveToLast(key, new PendingItem(item.copy(), result));
+						}
+					}
+				}
+				else
+				{
+					result = cacheColor(key, item.getTag(), result, generation);
+				}
+			}
+		}
+
+		// Cached colors are always shared, even animated ones, so hand out copies that callers are free to modify.
+		return DynamicColor.modifiable(result != NO_COLOR ? result : getDefaultColor(defaultColor));
+	}
+
+	/**
+	 * Resolves and caches the color for an item while prewarming.  Items that need their tooltip checked are queued separately
+	 * from items that are being shown, and are checked within {@link #setPrewarmBudget their own budget} each frame.
+	 * @return True if the item is waiting for its tooltip to be checked.
+	 */
+	static boolean prewarmColor(ItemStack item)
+	{
+		final long key = getCacheKey(item);
+		final int generation = cacheGeneration;
+		if (isCached(item, key))
+		{
+			return false;
+		}
+
+		final ItemColorResolver.Context context = new ItemColorResolver.Context(item);
+		TextColor result = resolveNameColor(item, context);
+		if (!needsTooltipColor(context, result))
+		{
+			cacheColor(key, item.getTag(), result, generation);
+			return false;
+		}
+
+		result = result != null ? DynamicColor.shared((IColor)result) : NO_COLOR;
+		synchronized (prewarmItems)
+		{
+			if (generation != cacheGeneration)
+			{
+				return false;
+			}
+			prewarmItems.putAndMoveToLast(key, new PendingItem(item.copy(), result));
+		}
+		return true;
+	}
+
+	static int getPrewarmQueueSize()
+	{
+		synchronized (prewarmItems)
+		{
+			return prewarmItems.size();
+		}
+	}
+
+	static void clearPrewarmQueue()
+	{
+		synchronized (prewarmItems)
+		{
+			prewarmItems.clear();
+		}
+	}
+
+	/**
+	 * Sets how much time may be spent checking tooltips for deferred item colors each frame.
+	 * At least one tooltip is always checked per frame while any are waiting.
+	 */
+	public static void setDeferredBudget(long nanos)
+	{
+		deferredBudgetNanos = Math.max(nanos, 0);
+	}
+
+	/**
+	 * Sets how much time may be spent checking tooltips for prewarmed item colors each frame, after any items that are being shown.
+	 * A budget of 0 stops prewarmed tooltips from being checked until it is raised again.
+	 */
+	public static void setPrewarmBudget(long nanos)
+	{
+		prewarmBudgetNanos = Math.max(nanos, 0);
+	}
+
+	public static void onRenderTick(RenderTickEvent event)
+	{
+		if (event.phase != TickEvent.Phase.END)
+		{
+			return;
+		}
+
+		final int generation = cacheGeneration;
+		final long startTime = System.nanoTime();
+		while (checkTooltip(pendingItems, generation) && System.nanoTime() - startTime < deferredBudgetNanos) {}
+
+		final long prewarmStartTime = System.nanoTime();
+		boolean checkedPrewarmItem = false;
+		while (System.nanoTime() - prewarmStartTime < prewarmBudgetNanos && checkTooltip(prewarmItems, generation))
+		{
+			checkedPrewarmItem = true;
+		}
+
+		if (checkedPrewarmItem && getPrewarmQueueSize() == 0)
+		{
+			ItemColorPrewarmer.checkFinished();
+		}
+	}
+
+	/**
+	 * Checks the tooltip of the first item in the given queue, and caches its final color.
+	 * @return True if there was an item in the queue.
+	 */
+	private static boolean checkTooltip(Long2ObjectLinkedOpenHashMap<PendingItem> queue, int generation)
+	{
+		long key;
+		PendingItem pendingItem;
+		synchronized (queue)
+		{
+			if (queue.isEmpty())
+			{
+				return false;
+			}
+			key = queue.firstLongKey();
+			pendingItem = queue.removeFirst();
+		}
+
+		// Prewarmed items may have been shown and resolved since they were queued.
+		ItemStack item = pendingItem.item();
+		if (queue == prewarmItems && isCached(item, key))
+		{
+			return true;
+		}
+
+		TextColor result = resolveTooltipColor(item, new ItemColorResolver.Context(item), pendingItem.color() != NO_COLOR ? pendingItem.color() : null);
+		cacheColor(key, item.getTag(), result, generation);
+		return true;
+	}
+
+	/**
+	 * Builds a cache key from the item's id and a hash of its NBT data, since NBT can change an item's name and color.
+	 * Different NBT can have the same hash, so the NBT itself must also be compared when looking up a key.
+	 */
+	private static long getCacheKey(ItemStack item)
+	{
+		int tagHash = item.getTag() != null ? item.getTag().hashCode() : 0;
+		return ((long)Item.getId(item.getItem()) << 32) | (tagHash & 0xFFFFFFFFL);
+	}
+
+	/**
+	 * Clears all cached item colors.  This is done automatically when resources are reloaded (including on language changes),
+	 * and when the player logs in or out.
+	 */
+	public static void clearCache()
+	{
+		synchronized (colorCache)
+		{
+			colorCache.clear();
+			cacheGeneration++;
+		}
+		synchronized (pendingItems)
+		{
+			pendingItems.clear();
+		}
+		clearPrewarmQueue();
+	}
+
+	/**
+	 * Sets the maximum number of item colors that will be cached.  The least recently used colors are removed first.
+	 */
+	public static void setCacheSize(int size)
+	{
+		synchronized (colorCache)
+		{
+			cacheSize = Math.max(size, 0);
+			while (colorCache.size() > cacheSize)
+			{
+				colorCache.removeFirst();
+			}
+		}
+	}
+
+	public static long getCacheHits()
+	{
+		synchronized (colorCache)
+		{
+			return cacheHits;
+		}
+	}
+
+	public static long getCacheMisses()
+	{
+		synchronized (colorCache)
+		{
+			return cacheMisses;
+		}
+	}
+
+	public static void onRegisterReloadListeners(RegisterClientReloadListenersEvent event)
+	{
+		event.registerReloadListener((ResourceManagerReloadListener) resourceManager -> clearCache());
+	}
+
+	public static void onPlayerLoggingIn(ClientPlayerNetworkEvent.LoggingIn event)
+	{
+		clearCache();
+	}
+
+	public static void onPlayerLoggingOut(ClientPlayerNetworkEvent.LoggingOut event)
+	{
+		clearCache();
+	}
+
+	/**
+	 * Registers a resolver that runs before all built-in resolvers for every item.
+	 * Resolvers registered later run before those registered earlier.
+	 * @param name The name of the resolver, used in statistics.
+	 * @param resolver The resolver.
+	 */
+	public static void registerResolver(String name, ItemColorResolver resolver)
+	{
+		nameStages.add(0, new Stage(name, resolver));
+		clearCache();
+	}
+
+	/**
+	 * Registers a resolver that only runs for the given item, before any other resolvers.
+	 * @param name The name of the resolver, used in statistics.
+	 * @param item The item this resolver applies to.
+	 * @param resolver The resolver.
+	 */
+	public static void registerResolver(String name, Item item, ItemColorResolver resolver)
+	{
+		itemStages.computeIfAbsent(item, i -> new CopyOnWriteArrayList<>()).add(0, new Stage(name, resolver));
+		clearCache();
+	}
+
+	/**
+	 * Returns usage statistics for every resolver, in the order they run.
+	 * Resolvers registered for specific items are listed first.
+	 */
+	public static List<ResolverStats> getResolverStats()
+	{
+		List<ResolverStats> result = Lists.newArrayList();
+		for (List<Stage> stages : itemStages.values())
+		{
+			for (Stage stage : stages)
+			{
+				result.add(stage.getStats());
+			}
+		}
+		for (Stage stage : nameStages)
+		{
+			result.add(stage.getStats());
+		}
+		result.add(tooltipStage.getStats());
+		return result;
+	}
+
+	/**
+	 * Finds the item's color from its name alone, which is fast.  Stops at the first resolver that finds a color.
+	 */
+	private static TextColor resolveNameColor(ItemStack item, ItemColorResolver.Context context)
+	{
+		List<Stage> stages = itemStages.isEmpty() ? null : itemStages.get(item.getItem());
+		if (stages != null)
+		{
+			for (Stage stage : stages)
+			{
+				TextColor result = stage.resolve(item, context);
+				if (result != null)
+				{
+					return result;
+				}
+			}
 		}
 
-		return new DynamicColor((IColor)result);
+		for (Stage stage : nameStages)
+		{
+			TextColor result = stage.resolve(item, context);
+			if (result != null)
+			{
+				return result;
+			}
+		}
+		return null;
+	}
+
+	private static boolean needsTooltipColor(ItemColorResolver.Context context, TextColor nameColor)
+	{
+		// If we haven't found a color or we're still using the rarity color, the actual tooltip needs to be checked.
+		return nameColor == null || nameColor.equals(context.getRarityColor());
+	}
+
+	/**
+	 * Finds the item's color from its tooltip.
+	 * @param nameColor The color found from the item's name, which is returned if the tooltip doesn't have a color.
+	 */
+	private static TextColor resolveTooltipColor(ItemStack item, ItemColorResolver.Context context, TextColor nameColor)
+	{
+		TextColor result = tooltipStage.resolve(item, context);
+		return result != null ? result : nameColor;
 	}
 }
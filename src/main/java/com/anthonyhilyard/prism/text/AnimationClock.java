@@ -0,0 +1,44 @@
+package com.anthonyhilyard.prism.text;
+
+import net.minecraft.client.Minecraft;
+import net.minecraftforge.event.TickEvent;
+import net.minecraftforge.event.TickEvent.RenderTickEvent;
+
+/**
+ * A single shared clock that drives all animated colors.  It is registered once by Prism and advanced every frame,
+ * and animated colors read their elapsed time from it instead of listening for render ticks themselves.
+ * The clock holds no references to any colors, so per-frame cost is constant and unused colors can be garbage collected.
+ */
+public final class AnimationClock
+{
+	private static volatile double time = 0.0;
+
+	private AnimationClock() {}
+
+	/**
+	 * Returns the current animation time.  This value only ever increases, and is safe to read from any thread.
+	 * @return The elapsed animation time, in the same units as DynamicColor durations.
+	 */
+	public static double getTime()
+	{
+		return time;
+	}
+
+	/**
+	 * Converts a number of game ticks to animation time, such as when matching the timing of an animated texture.
+	 */
+	public static float ticksToTime(int ticks)
+	{
+		return ticks / 25.0f;
+	}
+
+	public static void onRenderTick(RenderTickEvent event)
+	{
+		// Animated colors used to advance on both phases of the render tick, so advance by twice the
+		// per-phase amount once per frame to keep existing animation speeds the same.
+		if (event.phase == TickEvent.Phase.START)
+		{
+			time += Minecraft.getInstance().getDeltaFrameTime() / 25.0;
+		}
+	}
+}
@@ -1,25 +1,305 @@
 package com.anthonyhilyard.prism.text;
 
+import java.util.Arrays;
 import java.util.List;
-import java.util.function.Consumer;
 
 import com.anthonyhilyard.prism.util.ColorUtil;
 import com.anthonyhilyard.prism.util.IColor;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.Lists;
 
-import net.minecraft.client.Minecraft;
 import net.minecraft.network.chat.TextColor;
 import net.minecraft.util.Mth;
-import net.minecraftforge.common.MinecraftForge;
-import net.minecraftforge.event.TickEvent.RenderTickEvent;
-import net.minecraftforge.eventbus.api.EventPriority;
 
 public final class DynamicColor extends TextColor implements IColor
 {
-	private final List<IColor> values = Lists.newArrayList();
-	private float duration;
-	private int currentIndex;
-	private float timer;
+	/**
+	 * A single stop in an animated color, along with how long it takes to transition from this stop to the next.
+	 */
+	public static record Keyframe(IColor color, float duration) {}
+
+	/**
+	 * Easing curves applied to the transition between two keyframes.
+	 */
+	public static enum Easing
+	{
+		LINEAR,
+		EASE_IN,
+		EASE_OUT,
+		EASE_IN_OUT,
+		STEP;
+
+		public float apply(float t)
+		{
+			return switch (this)
+			{
+				case LINEAR -> t;
+				case EASE_IN -> t * t;
+				case EASE_OUT -> 1.0f - (1.0f - t) * (1.0f - t);
+				case EASE_IN_OUT -> t * t * (3.0f - 2.0f * t);
+				case STEP -> t < 1.0f ? 0.0f : 1.0f;
+			};
+		}
+
+		public static Easing byName(String name)
+		{
+			for (Easing easing : values())
+			{
+				if (easing.name().replace("_", "").equalsIgnoreCase(name))
+				{
+					return easing;
+				}
+			}
+			return null;
+		}
+	}
+
+	/**
+	 * How an animated color behaves when it reaches its last keyframe.
+	 * LOOP fades from the last keyframe back to the first, PING_PONG plays the keyframes in reverse, and ONCE holds the last keyframe.
+	 * Colors that play once start timing when they are created, so use {@link DynamicColor#restart()} when they are first shown.
+	 * They are never shared, since each one needs its own start time.
+	 */
+	public static enum Mode
+	{
+		LOOP,
+		PING_PONG,
+		ONCE;
+
+		public static Mode byName(String name)
+		{
+			for (Mode mode : values())
+			{
+				if (mode.name().replace("_", "").equalsIgnoreCase(name))
+				{
+					return mode;
+				}
+			}
+			return null;
+		}
+	}
+
+	/**
+	 * An immutable snapshot of the keyframes of a color.  Mutators replace the whole timeline at once, so readers on any thread
+	 * always see a consistent set of keyframes, timing, and start time.  Copies of a color share its timeline until one of them is modified.
+	 */
+	private static final class Timeline
+	{
+		private final List<IColor> values;
+		private final float[] durations;
+		private final float defaultDuration;
+		private final Easing easing;
+		private final Mode mode;
+		private final double startTime;
+		private final int bakeResolution;
+
+		// The start time of each segment, followed by the total length of one forward pass through the keyframes.
+		private final double[] segmentStarts;
+		private final int segmentCount;
+
+		// The resolved keyframe values, or null if any keyframe is itself animated and must be evaluated at each timestamp.
+		private final int[] staticValues;
+
+		// The precomputed values of one forward pass, or null if this timeline isn't baked.
+		private final int[] ramp;
+
+		// The most recent evaluation, which is shared by every color using this timeline.
+		private volatile Sample lastSample = null;
+
+		/**
+		 * @param defaultDuration The duration of keyframes added without one when there are no keyframes to take it from.
+		 */
+		private Timeline(List<IColor> values, float[] durations, float defaultDuration, Easing easing, Mode mode, double startTime, int bakeResolution)
+		{
+			this.values = List.copyOf(values);
+			this.durations = durations.clone();
+			this.defaultDuration = defaultDuration;
+			this.easing = easing;
+			this.mode = mode;
+			this.startTime = startTime;
+			this.bakeResolution = bakeResolution;
+
+			// Looping colors also transition from the last keyframe back to the first.
+			segmentCount = mode == Mode.LOOP ? this.values.size() : Math.max(this.values.size() - 1, 0);
+			segmentStarts = new double[segmentCount + 1];
+			for (int i = 0; i < segmentCount; i++)
+			{
+				segmentStarts[i + 1] = segmentStarts[i] + Math.max(this.durations[i], 0.0f);
+			}
+
+			int[] resolved = new int[this.values.size()];
+			for (int i = 0; i < resolved.length; i++)
+			{
+				if (this.values.get(i).isAnimated())
+				{
+					resolved = null;
+					break;
+				}
+				resolved[i] = this.values.get(i).getValue();
+			}
+			this.staticValues = resolved;
+
+			// Baking is only possible when every keyframe has a fixed value.
+			this.ramp = bakeResolution > 0 && isAnimated() && staticValues != null ? bake(bakeResolution) : null;
+		}
+
+		private Timeline(List<IColor> values, float duration, Easing easing, Mode mode, double startTime, int bakeResolution)
+		{
+			this(values, uniformDurations(values.size(), duration), duration, easing, mode, startTime, bakeResolution);
+		}
+
+		private static float[] uniformDurations(int count, float duration)
+		{
+			float[] result = new float[count];
+			Arrays.fill(result, duration);
+			return result;
+		}
+
+		private boolean isAnimated()
+		{
+			return values.size() > 1 && length() > 0;
+		}
+
+		/**
+		 * Returns the duration for a keyframe added without one, which is the same as the last keyframe's.
+		 */
+		private float nextDuration()
+		{
+			return durations.length > 0 ? durations[durations.length - 1] : defaultDuration;
+		}
+
+		/**
+		 * Returns the length of one forward pass through all keyframes.
+		 */
+		private double length()
+		{
+			return segmentStarts[segmentCount];
+		}
+
+		/**
+		 * Converts an animation clock time to a position along one forward pass through the keyframes.
+		 */
+		private double getPosition(double time)
+		{
+			final double elapsed = Math.max(time - startTime, 0.0);
+			final double length = length();
+			return switch (mode)
+			{
+				case LOOP -> elapsed % length;
+				case PING_PONG ->
+				{
+					double position = elapsed % (length * 2.0);
+					yield position > length ? length * 2.0 - position : position;
+				}
+				case ONCE -> Math.min(elapsed, length);
+			};
+		}
+
+		private int getKeyframeValue(int index, double time)
+		{
+			if (staticValues != null)
+			{
+				return staticValues[index];
+			}
+
+			IColor value = values.get(index);
+			return value instanceof DynamicColor dynamicColor ? dynamicColor.getValue(time) : value.getValue();
+		}
+
+		/**
+		 * Returns a string that uniquely identifies this timeline's keyframes and timing, or null if it can't be shared.
+		 */
+		private String getKey(String name)
+		{
+			if (staticValues == null || mode == Mode.ONCE)
+			{
+				return null;
+			}
+
+			StringBuilder key = new StringBuilder();
+			key.append(name).append('|').append(mode.ordinal()).append('|').append(easing.ordinal());
+			for (int i = 0; i < staticValues.length; i++)
+			{
+				key.append('|').append(Integer.toHexString(staticValues[i])).append('@').append(durations[i]);
+			}
+			return key.toString();
+		}
+
+		private int[] bake(int resolution)
+		{
+			final double step = length() / resolution;
+			int[] result = new int[resolution];
+			for (int i = 0; i < resolution; i++)
+			{
+				result[i] = evaluate(i * step, 0.0);
+			}
+			return result;
+		}
+
+		private int lookup(double position)
+		{
+			// The very end of the pass is only reached by non-looping colors, and is always exactly the last keyframe.
+			if (position >= length())
+			{
+				return staticValues[segmentCount % values.size()];
+			}
+			return ramp[Math.min((int)(position / length() * ramp.length), ramp.length - 1)];
+		}
+
+		/**
+		 * Evaluates this timeline exactly at the given position.
+		 * @param position The position along one forward pass through the keyframes.
+		 * @param time The animation clock time, used to evaluate animated keyframes.
+		 */
+		private int evaluate(double position, double time)
+		{
+			if (position >= length())
+			{
+				return getKeyframeValue(segmentCount % values.size(), time);
+			}
+
+			// Find the segment containing this position.
+			int segment = Arrays.binarySearch(segmentStarts, 0, segmentCount, position);
+			if (segment < 0)
+			{
+				segment = -segment - 2;
+			}
+
+			// Skip over any zero-length segments that start at this same position.
+			while (segment < segmentCount - 1 && segmentStarts[segment + 1] <= position)
+			{
+				segment++;
+			}
+			segment = Mth.clamp(segment, 0, segmentCount - 1);
+
+			float segmentLength = (float)(segmentStarts[segment + 1] - segmentStarts[segment]);
+			float progress = easing.apply(segmentLength > 0 ? (float)(position - segmentStarts[segment]) / segmentLength : 1.0f);
+
+			int currentValue = getKeyframeValue(segment, time);
+			int nextValue = getKeyframeValue((segment + 1) % values.size(), time);
+
+			int alpha =	(int) Mth.lerp(progress, (currentValue >> 24) & 0xFF, (nextValue >> 24) & 0xFF);
+			int red =	(int) Mth.lerp(progress, (currentValue >> 16) & 0xFF, (nextValue >> 16) & 0xFF);
+			int green =	(int) Mth.lerp(progress, (currentValue >> 8) & 0xFF,  (nextValue >> 8) & 0xFF);
+			int blue =	(int) Mth.lerp(progress, (currentValue >> 0) & 0xFF,  (nextValue >> 0) & 0xFF);
+
+			return ColorUtil.combineARGB(alpha, red, green, blue);
+		}
+	}
+
+	private static record Sample(double time, int value) {}
+
+	/**
+	 * The number of samples per cycle used when baking a color with {@link #bake()}.
+	 */
+	public static final int DEFAULT_BAKE_RESOLUTION = 256;
+
+	// Canonical instances of colors, keyed by their keyframes and timing.  Values are weakly held so unused colors can be collected.
+	private static final Cache<String, DynamicColor> sharedColors = CacheBuilder.newBuilder().weakValues().build();
+
+	private volatile Timeline timeline;
+	private volatile boolean shared = false;
 
 	public DynamicColor(IColor color)
 	{
@@ -40,13 +320,52 @@ public final class DynamicColor extends TextColor implements IColor
 	{
 		super(values.get(0).getValue(), name);
 
-		this.values.addAll(values);
-		this.duration = values.size() > 0 ? duration / values.size() : duration;
+		this.timeline = new Timeline(values, values.size() > 0 ? duration / values.size() : duration, Easing.LINEAR, Mode.LOOP, AnimationClock.getTime(), 0);
+	}
+
+	private DynamicColor(DynamicColor source, boolean shared)
+	{
+		super(source.getValue(), source.name);
+
+		this.timeline = source.timeline;
+		this.shared = shared;
+	}
 
-		if (isAnimated())
+	public DynamicColor(List<Keyframe> keyframes, Easing easing, Mode mode)
+	{
+		this(keyframes, easing, mode, null);
+	}
+
+	public DynamicColor(List<Keyframe> keyframes, Easing easing, Mode mode, String name)
+	{
+		super(keyframes.get(0).color().getValue(), name);
+
+		float[] durations = getDurations(keyframes);
+		this.timeline = new Timeline(keyframes.stream().map(Keyframe::color).toList(), durations, durations[durations.length - 1], easing, mode, AnimationClock.getTime(), 0);
+	}
+
+	/**
+	 * Creates a copy of the given color with different keyframes, such as the same colors with modifiers applied.
+	 * The name, easing, mode, start time and bake resolution are all kept, and the copy is modifiable.
+	 */
+	public DynamicColor(DynamicColor source, List<Keyframe> keyframes)
+	{
+		super(keyframes.get(0).color().getValue(), source.name);
+
+		final Timeline sourceTimeline = source.timeline;
+		float[] durations = getDurations(keyframes);
+		this.timeline = new Timeline(keyframes.stream().map(Keyframe::color).toList(), durations, durations[durations.length - 1],
+									 sourceTimeline.easing, sourceTimeline.mode, sourceTimeline.startTime, sourceTimeline.bakeResolution);
+	}
+
+	private static float[] getDurations(List<Keyframe> keyframes)
+	{
+		float[] durations = new float[keyframes.size()];
+		for (int i = 0; i < durations.length; i++)
 		{
-			MinecraftForge.EVENT_BUS.addListener(EventPriority.NORMAL, false, RenderTickEvent.class, this::onRenderTick);
+			durations[i] = Math.max(keyframes.get(i).duration(), 0.0f);
 		}
+		return durations;
 	}
 
 	public static DynamicColor fromRgb(int value)
@@ -61,6 +380,21 @@ public final class DynamicColor extends TextColor implements IColor
 		}
 	}
 
+	/**
+	 * Creates a color that loops through the given ARGB colors, such as a palette from {@link com.anthonyhilyard.prism.util.ImageAnalysis#getPalette}.
+	 * @param colors The colors to loop through, which must not be empty.
+	 * @param duration The time taken to loop through all of the colors.
+	 */
+	public static DynamicColor fromPalette(int[] colors, float duration)
+	{
+		List<IColor> values = Lists.newArrayListWithCapacity(colors.length);
+		for (int color : colors)
+		{
+			values.add(fromRgb(color));
+		}
+		return new DynamicColor(values, duration);
+	}
+
 	public static DynamicColor fromRGB(float red, float green, float blue)
 	{
 		return fromARGB(1.0f, red, green, blue);
@@ -126,6 +460,84 @@ public final class DynamicColor extends TextColor implements IColor
 		return new DynamicColor(color);
 	}
 
+	/**
+	 * Returns the canonical instance for colors with the same keyframes and timing as the given color.
+	 * Identical colors then share one instance, one animation phase, and one evaluation per frame.
+	 * Canonical instances can't be modified, but the given color is never changed and remains modifiable.
+	 * @param color The color to canonicalize.
+	 * @return The canonical instance, or the given color if it can't be shared because it has animated keyframes or only plays once.
+	 */
+	public static DynamicColor canonicalize(DynamicColor color)
+	{
+		String key = color.timeline.getKey(color.name);
+		if (color.shared || key == null)
+		{
+			return color;
+		}
+
+		return sharedColors.asMap().computeIfAbsent(key, k -> new DynamicColor(color, true));
+	}
+
+	/**
+	 * Returns a shared, unmodifiable DynamicColor for the given color, only creating a new one if no identical color exists.
+	 * Animated colors that can't be canonicalized get a new unmodifiable instance, which isn't affected by later changes to the given color.
+	 * @param color The color to wrap.
+	 * @return The shared DynamicColor.
+	 */
+	public static DynamicColor shared(IColor color)
+	{
+		if (color instanceof DynamicColor dynamicColor && dynamicColor.shared)
+		{
+			return dynamicColor;
+		}
+		else if (color.isAnimated())
+		{
+			// Animated colors can't be looked up by value, but still get an unmodifiable instance if they can't be canonicalized.
+			DynamicColor result = color instanceof DynamicColor dynamicColor ? canonicalize(dynamicColor) : new DynamicColor(color);
+			return result.shared ? result : new DynamicColor(result, true);
+		}
+
+		// Look up static colors by value and name first to avoid creating a new instance at all.
+		String key = color.getName() + "#" + Integer.toHexString(color.getValue());
+		return sharedColors.asMap().computeIfAbsent(key, k ->
+		{
+			DynamicColor result = new DynamicColor(color);
+			result.shared = true;
+			return result;
+		});
+	}
+
+	public boolean isShared()
+	{
+		return shared;
+	}
+
+	/**
+	 * Returns a modifiable copy of this color with the same keyframes, timing, and animation phase.
+	 * The copy shares this color's keyframes until either color is modified, so copying shared colors is cheap.
+	 */
+	public DynamicColor copy()
+	{
+		return new DynamicColor(this, false);
+	}
+
+	/**
+	 * Returns a modifiable color for the given color, copying it if it's a shared DynamicColor.
+	 * Used to hand out shared colors to callers that may modify what they're given.
+	 */
+	public static TextColor modifiable(TextColor color)
+	{
+		return color instanceof DynamicColor dynamicColor && dynamicColor.shared ? dynamicColor.copy() : color;
+	}
+
+	private void checkNotShared()
+	{
+		if (shared)
+		{
+			throw new UnsupportedOperationException("Shared colors can't be modified.");
+		}
+	}
+
 	public int alpha()		{ return (getValue() >> 24) & 0xFF; }
 	public int red()		{ return (getValue() >> 16) & 0xFF; }
 	public int green()		{ return (getValue() >> 8)  & 0xFF; }
@@ -135,66 +547,216 @@ public final class DynamicColor extends TextColor implements IColor
 	public int saturation()	{ return (int)(ColorUtil.RGBtoHSV(red(), green(), blue())[1] * 255.0f); }
 	public int value()		{ return (int)(ColorUtil.RGBtoHSV(red(), green(), blue())[2] * 255.0f); }
 
-	public void addColor(IColor color)
+	/**
+	 * Adds a keyframe to the end of this color, using the same duration as the current last keyframe.
+	 * If there are no keyframes, the duration from {@link #setDuration} or from before they were cleared is used.
+	 */
+	public synchronized void addColor(IColor color)
+	{
+		checkNotShared();
+		addColor(color, timeline.nextDuration());
+	}
+
+	public synchronized void addColor(IColor color, float duration)
 	{
+		checkNotShared();
+		List<IColor> values = Lists.newArrayList(timeline.values);
 		values.add(color);
+		float[] durations = Arrays.copyOf(timeline.durations, timeline.durations.length + 1);
+		durations[durations.length - 1] = Math.max(duration, 0.0f);
+		timeline = new Timeline(values, durations, timeline.defaultDuration, timeline.easing, timeline.mode, timeline.startTime, timeline.bakeResolution);
 	}
 
-	public void clearColors()
+	/**
+	 * Removes every keyframe.  The duration of the last keyframe is kept for keyframes added afterwards.
+	 */
+	public synchronized void clearColors()
 	{
-		values.clear();
-		currentIndex = 0;
+		checkNotShared();
+		timeline = new Timeline(List.of(), new float[0], timeline.nextDuration(), timeline.easing, timeline.mode, AnimationClock.getTime(), timeline.bakeResolution);
 	}
 
-	public void setDuration(float duration)
+	/**
+	 * Sets the duration of every keyframe to the given value, including keyframes added afterwards.
+	 */
+	public synchronized void setDuration(float duration)
 	{
-		this.duration = Math.max(duration, 0.0f);
+		checkNotShared();
+		timeline = new Timeline(timeline.values, Math.max(duration, 0.0f), timeline.easing, timeline.mode, timeline.startTime, timeline.bakeResolution);
+	}
 
-		if (isAnimated())
+	public synchronized void setEasing(Easing easing)
+	{
+		checkNotShared();
+		timeline = new Timeline(timeline.values, timeline.durations, timeline.defaultDuration, easing, timeline.mode, timeline.startTime, timeline.bakeResolution);
+	}
+
+	public synchronized void setMode(Mode mode)
+	{
+		checkNotShared();
+		timeline = new Timeline(timeline.values, timeline.durations, timeline.defaultDuration, timeline.easing, mode, timeline.startTime, timeline.bakeResolution);
+	}
+
+	/**
+	 * Restarts this color's animation from its first keyframe.  Mainly useful for colors that only play once.
+	 */
+	public void restart()
+	{
+		setStartTime(AnimationClock.getTime());
+	}
+
+	/**
+	 * Sets the animation clock time at which this color's first keyframe is shown.
+	 * @param time The start time, as returned by {@link AnimationClock#getTime()}.
+	 */
+	public synchronized void setStartTime(double time)
+	{
+		checkNotShared();
+		timeline = new Timeline(timeline.values, timeline.durations, timeline.defaultDuration, timeline.easing, timeline.mode, time, timeline.bakeResolution);
+	}
+
+	public double getStartTime()
+	{
+		return timeline.startTime;
+	}
+
+	public Easing getEasing()
+	{
+		return timeline.easing;
+	}
+
+	public Mode getMode()
+	{
+		return timeline.mode;
+	}
+
+	/**
+	 * Returns this color's keyframes and their durations, in order.
+	 */
+	public List<Keyframe> getKeyframes()
+	{
+		final Timeline timeline = this.timeline;
+		List<Keyframe> keyframes = Lists.newArrayListWithCapacity(timeline.values.size());
+		for (int i = 0; i < timeline.values.size(); i++)
 		{
-			MinecraftForge.EVENT_BUS.addListener(EventPriority.NORMAL, false, RenderTickEvent.class, this::onRenderTick);
+			keyframes.add(new Keyframe(timeline.values.get(i), timeline.durations[i]));
 		}
-		else
+		return keyframes;
+	}
+
+	/**
+	 * Precomputes one full pass through the keyframes into a lookup table, so evaluating this color becomes a single array read.
+	 * Colors with animated keyframes can't be baked and will continue to be evaluated exactly.
+	 * Baking doesn't change which colors are shown, so it is also allowed on shared colors.
+	 * @param resolution The number of samples in the cycle, or 0 to disable baking.
+	 */
+	public synchronized void setBakeResolution(int resolution)
+	{
+		timeline = new Timeline(timeline.values, timeline.durations, timeline.defaultDuration, timeline.easing, timeline.mode, timeline.startTime, Math.max(resolution, 0));
+	}
+
+	/**
+	 * Bakes this color at {@link #DEFAULT_BAKE_RESOLUTION}, which is accurate enough for any color that isn't unusually long or complex.
+	 * @see #setBakeResolution(int)
+	 */
+	public void bake()
+	{
+		setBakeResolution(DEFAULT_BAKE_RESOLUTION);
+	}
+
+	public int getBakeResolution()
+	{
+		return timeline.bakeResolution;
+	}
+
+	public boolean isBaked()
+	{
+		return timeline.ramp != null;
+	}
+
+	/**
+	 * Measures how far a baked version of this color would stray from exact evaluation.
+	 * Useful for picking the lowest resolution that still looks right for a given color.
+	 * @param resolution The bake resolution to measure.
+	 * @return The largest difference seen in any single channel (0-255), or 0 if this color can't be baked.
+	 */
+	public int measureBakeError(int resolution)
+	{
+		final Timeline current = this.timeline;
+		final Timeline timeline = new Timeline(current.values, current.durations, current.defaultDuration, current.easing, current.mode, current.startTime, resolution);
+		if (timeline.ramp == null)
 		{
-			MinecraftForge.EVENT_BUS.unregister((Consumer<RenderTickEvent>)this::onRenderTick);
+			return 0;
 		}
+
+		// Compare the baked and exact values at several points within each sample of the table.
+		final int samples = resolution * 8;
+		final double step = timeline.length() / samples;
+		int maxError = 0;
+		for (int i = 0; i < samples; i++)
+		{
+			int exact = timeline.evaluate(i * step, 0.0);
+			int baked = timeline.lookup(i * step);
+			for (int shift = 0; shift < 32; shift += 8)
+			{
+				maxError = Math.max(maxError, Math.abs(((exact >> shift) & 0xFF) - ((baked >> shift) & 0xFF)));
+			}
+		}
+		return maxError;
 	}
 
 	@Override
 	public boolean isAnimated()
 	{
-		return values.size() > 1 && duration > 0;
+		return timeline.isAnimated();
 	}
 
 	@Override
 	public int getValue()
 	{
-		if (values.isEmpty())
+		return getValue(AnimationClock.getTime());
+	}
+
+	/**
+	 * Returns the value of this color at the given animation clock time.
+	 * This is a pure function of the timestamp, so it is deterministic and safe to call from any thread.
+	 * @param time The animation time, as returned by {@link AnimationClock#getTime()}.
+	 * @return The ARGB value of this color at the given time.
+	 */
+	public int getValue(double time)
+	{
+		final Timeline timeline = this.timeline;
+		if (timeline.values.isEmpty())
 		{
 			return 0;
 		}
-		else if (values.size() > 1)
+		else if (!timeline.isAnimated())
 		{
-			int nextIndex = (currentIndex + 1) % values.size();
-			int currentValue = values.get(currentIndex).getValue();
-			int nextValue = values.get(nextIndex).getValue();
-
-			int alpha =	(int) Mth.lerp(timer / duration, (currentValue >> 24) & 0xFF, (nextValue >> 24) & 0xFF);
-			int red =	(int) Mth.lerp(timer / duration, (currentValue >> 16) & 0xFF, (nextValue >> 16) & 0xFF);
-			int green =	(int) Mth.lerp(timer / duration, (currentValue >> 8) & 0xFF,  (nextValue >> 8) & 0xFF);
-			int blue =	(int) Mth.lerp(timer / duration, (currentValue >> 0) & 0xFF,  (nextValue >> 0) & 0xFF);
+			return timeline.getKeyframeValue(0, time);
+		}
 
-			return ColorUtil.combineARGB(alpha, red, green, blue);
+		double position = timeline.getPosition(time);
+		if (timeline.ramp != null)
+		{
+			return timeline.lookup(position);
 		}
-		else
+
+		// Most callers ask for the same timestamp many times per frame, so reuse the last result if we can.
+		Sample sample = timeline.lastSample;
+		if (sample != null && sample.time() == time)
 		{
-			return values.get(0).getValue();
+			return sample.value();
 		}
+
+		int result = timeline.evaluate(position, time);
+		timeline.lastSample = new Sample(time, result);
+		return result;
 	}
 
 	@Override
 	public String toString()
 	{
+		final List<IColor> values = timeline.values;
 		if (values.size() == 1)
 		{
 			return name != null ? name : String.format("#%08X", this.getValue());
@@ -210,22 +772,12 @@ public final class DynamicColor extends TextColor implements IColor
 			}
 			result.delete(result.length() - 2, result.length() - 1);
 			result.append("], ");
-			result.append(duration);
+			result.append((float)timeline.length());
 			result.append("s)");
 			return result.toString();
 		}
 	}
 
-	public void onRenderTick(RenderTickEvent event)
-	{
-		timer += Minecraft.getInstance().getDeltaFrameTime() / 50.0f;
-		if (timer >= duration)
-		{
-			currentIndex = (currentIndex + 1) % values.size();
-			timer -= duration;
-		}
-	}
-
 	@Override
 	public String getName()
 	{
@@ -0,0 +1,211 @@
+package com.anthonyhilyard.prism.util;
+
+import java.util.Arrays;
+
+/**
+ * A histogram of ARGB colors backed by a primitive open-addressing hash table.
+ * Each color is stored along with its number of occurrences and its weight, which is only calculated the first time the color is seen.
+ * Adding colors never allocates unless the table needs to grow.
+ */
+final class ColorHistogram
+{
+	private static final float MAX_LOAD = 0.5f;
+
+	private int[] colors;
+	private int[] counts;
+	private float[] weights;
+	private int size = 0;
+	private int mask;
+
+	ColorHistogram()
+	{
+		this(1024);
+	}
+
+	ColorHistogram(int expectedColors)
+	{
+		int capacity = Integer.highestOneBit(Math.max((int)(expectedColors / MAX_LOAD), 16) - 1) << 1;
+		colors = new int[capacity];
+		counts = new int[capacity];
+		weights = new float[capacity];
+		mask = capacity - 1;
+	}
+
+	/**
+	 * Calculates the weight of the given color.  Bright and opaque colors are prioritized, and black and low-alpha colors are ignored.
+	 */
+	static float getWeight(int color)
+	{
+		float a = ((color >> 24) & 0xFF) / 255.0f;
+		float r = ((color >> 16) & 0xFF) / 255.0f;
+		float g = ((color >>  8) & 0xFF) / 255.0f;
+		float b = ((color >>  0) & 0xFF) / 255.0f;
+
+		// Ignore black and low-alpha colors.
+		if ((r <= 0.06f && g <= 0.06f && b <= 0.06f) || a < 0.3f)
+		{
+			return 0.0f;
+		}
+
+		// Prioritize bright and opaque colors.
+		return (1.0f - ((1.0f - a) * (1.0f - a)) +
+				1.0f - ((1.0f - r) * (1.0f - r)) +
+				1.0f - ((1.0f - g) * (1.0f - g)) +
+				1.0f - ((1.0f - r) * (1.0f - r)) +
+				1.0f - ((1.0f - g) * (1.0f - g)) +
+				1.0f - ((1.0f - b) * (1.0f - b)) +
+				1.0f - ((1.0f - b) * (1.0f - b))) / 7.0f;
+	}
+
+	private static int hash(int color)
+	{
+		int h = color * 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+
+	/**
+	 * Adds the given number of occurrences of a color.
+	 */
+	void add(int color, int count)
+	{
+		int slot = hash(color) & mask;
+		while (counts[slot] != 0)
+		{
+			if (colors[slot] == color)
+			{
+				counts[slot] += count;
+				return;
+			}
+			slot = (slot + 1) & mask;
+		}
+
+		// Colors with no weight are still stored, so their weight doesn't need to be calculated again.
+		colors[slot] = color;
+		counts[slot] = count;
+		weights[slot] = getWeight(color);
+		if (++size > colors.length * MAX_LOAD)
+		{
+			grow();
+		}
+	}
+
+	void add(int color)
+	{
+		add(color, 1);
+	}
+
+	/**
+	 * Adds the given number of pixels from an array, along with degraded copies of each so that similar colors are grouped together.
+	 */
+	void addDegraded(int[] pixels, int count)
+	{
+		for (int i = 0; i < count; i++)
+		{
+			// Each channel is shifted right by 0, 2, 4, and 6 bits, and the masks drop bits shifted in from the neighboring channel.
+			int color = pixels[i];
+			add(color);
+			add((color >>> 2) & 0x3F3F3F3F);
+			add((color >>> 4) & 0x0F0F0F0F);
+			add((color >>> 6) & 0x03030303);
+		}
+	}
+
+	/**
+	 * Adds all colors from another histogram to this one.
+	 */
+	void addAll(ColorHistogram other)
+	{
+		for (int slot = 0; slot < other.counts.length; slot++)
+		{
+			if (other.counts[slot] != 0)
+			{
+				add(other.colors[slot], other.counts[slot]);
+			}
+		}
+	}
+
+	void clear()
+	{
+		Arrays.fill(counts, 0);
+		size = 0;
+	}
+
+	int size()
+	{
+		return size;
+	}
+
+	/**
+	 * Returns the color with the highest combined count and weight.
+	 * Ties are broken by choosing the lower color value, so the result doesn't depend on the order colors were added in.
+	 * @return The dominant color, or null if no colors with any weight have been added.
+	 */
+	Integer getDominantColor()
+	{
+		int bestSlot = -1;
+		float bestScore = 0.0f;
+		for (int slot = 0; slot < counts.length; slot++)
+		{
+			if (counts[slot] == 0 || weights[slot] == 0.0f)
+			{
+				continue;
+			}
+
+			float score = counts[slot] * weights[slot];
+			if (bestSlot == -1 || score > bestScore || (score == bestScore && Integer.compareUnsigned(colors[slot], colors[bestSlot]) < 0))
+			{
+				bestSlot = slot;
+				bestScore = score;
+			}
+		}
+		return bestSlot != -1 ? colors[bestSlot] : null;
+	}
+
+	/**
+	 * Copies every color with any weight into the given arrays, along with its combined count and weight.
+	 * @param colors The array to copy colors into, which must hold at least {@link #size()} colors.
+	 * @param scores The array to copy scores into, which must hold at least {@link #size()} scores.
+	 * @return The number of colors copied.
+	 */
+	int getWeightedColors(int[] colors, float[] scores)
+	{
+		int count = 0;
+		for (int slot = 0; slot < counts.length; slot++)
+		{
+			if (counts[slot] != 0 && weights[slot] != 0.0f)
+			{
+				colors[count] = this.colors[slot];
+				scores[count] = counts[slot] * weights[slot];
+				count++;
+			}
+		}
+		return count;
+	}
+
+	private void grow()
+	{
+		final int[] oldColors = colors;
+		final int[] oldCounts = counts;
+		final float[] oldWeights = weights;
+
+		colors = new int[oldColors.length * 2];
+		counts = new int[oldCounts.length * 2];
+		weights = new float[oldWeights.length * 2];
+		mask = colors.length - 1;
+
+		for (int i = 0; i < oldCounts.length; i++)
+		{
+			if (oldCounts[i] != 0)
+			{
+				int slot = hash(oldColors[i]) & mask;
+				while (counts[slot] != 0)
+				{
+					slot = (slot + 1) & mask;
+				}
+				colors[slot] = oldColors[i];
+				counts[slot] = oldCounts[i];
+				weights[slot] = oldWeights[i];
+			}
+		}
+	}
+}
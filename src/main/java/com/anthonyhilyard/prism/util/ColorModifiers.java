@@ -0,0 +1,203 @@
+package com.anthonyhilyard.prism.util;
+
+import java.util.Arrays;
+import java.util.List;
+
+import net.minecraft.util.Mth;
+
+/**
+ * A compiled chain of color modifiers, such as "+h15-v20=a40", that is applied to a color in one pass.
+ * Components are modified as primitives, and colors are converted to HSV at most once for each run of hue, saturation, or value steps.
+ */
+final class ColorModifiers
+{
+	static final ColorModifiers NONE = new ColorModifiers(new byte[0], new int[0], 0);
+
+	private static final String TYPES = "argbhsv";
+	private static final int ALPHA = 0, RED = 1, GREEN = 2, BLUE = 3, HUE = 4, SATURATION = 5, VALUE = 6;
+
+	private static final String OPERATIONS = "+-=";
+
+	// Each step's component is in the low bits and its operation is above them.
+	private final byte[] steps;
+	private final int[] amounts;
+	private final int size;
+
+	private ColorModifiers(byte[] steps, int[] amounts, int size)
+	{
+		this.steps = steps;
+		this.amounts = amounts;
+		this.size = size;
+	}
+
+	/**
+	 * Compiles a list of modifier strings, skipping any that aren't valid.
+	 */
+	static ColorModifiers compile(List<String> modifiers)
+	{
+		Builder builder = new Builder();
+		for (String modifier : modifiers)
+		{
+			if (modifier.length() < 3 || !isValid(modifier.charAt(0), modifier.charAt(1)))
+			{
+				continue;
+			}
+
+			try
+			{
+				builder.add(modifier.charAt(0), modifier.charAt(1), Integer.parseInt(modifier.substring(2)));
+			}
+			catch (NumberFormatException e)
+			{
+				continue;
+			}
+		}
+		return builder.build();
+	}
+
+	/**
+	 * Returns true if the given characters are a valid modifier operation (+, -, or =) and type (h, s, v, r, g, b, or a).
+	 */
+	static boolean isValid(char operation, char type)
+	{
+		return OPERATIONS.indexOf(operation) >= 0 && TYPES.indexOf(Character.toLowerCase(type)) >= 0;
+	}
+
+	boolean isEmpty()
+	{
+		return size == 0;
+	}
+
+	/**
+	 * Applies every modifier in order to the given ARGB color.
+	 */
+	int apply(int color)
+	{
+		return apply(steps, amounts, size, color);
+	}
+
+	private static int apply(byte[] steps, int[] amounts, int size, int color)
+	{
+		if (size == 0)
+		{
+			return color;
+		}
+
+		int alpha = (color >> 24) & 0xFF;
+		int red = (color >> 16) & 0xFF;
+		int green = (color >> 8) & 0xFF;
+		int blue = color & 0xFF;
+		int hue = 0, saturation = 0, value = 0;
+
+		// Tracks which representation is up to date, so conversions only happen when switching between RGB and HSV steps.
+		boolean hsvCurrent = false;
+		boolean rgbCurrent = true;
+
+		for (int i = 0; i < size; i++)
+		{
+			final int type = steps[i] & 0x7;
+			final int operation = steps[i] >> 3;
+			final int amount = amounts[i];
+
+			if (type >= HUE)
+			{
+				if (!hsvCurrent)
+				{
+					float[] hsv = ColorUtil.RGBtoHSV(red, green, blue);
+					hue = (int)(hsv[0] * 360.0f);
+					saturation = (int)(hsv[1] * 255.0f);
+					value = (int)(hsv[2] * 255.0f);
+					hsvCurrent = true;
+				}
+				rgbCurrent = false;
+
+				// Hue is kept below 360, since a full turn would otherwise convert to black.
+				switch (type)
+				{
+					case HUE -> hue = Mth.clamp(modify(hue, operation, amount), 0, 359);
+					case SATURATION -> saturation = Mth.clamp(modify(saturation, operation, amount), 0, 255);
+					default -> value = Mth.clamp(modify(value, operation, amount), 0, 255);
+				}
+			}
+			else if (type == ALPHA)
+			{
+				alpha = Mth.clamp(modify(alpha, operation, amount), 0, 255);
+			}
+			else
+			{
+				if (!rgbCurrent)
+				{
+					int rgb = ColorUtil.HSVtoRGB(hue, saturation, value);
+					red = (rgb >> 16) & 0xFF;
+					green = (rgb >> 8) & 0xFF;
+					blue = rgb & 0xFF;
+					rgbCurrent = true;
+				}
+				hsvCurrent = false;
+
+				switch (type)
+				{
+					case RED -> red = Mth.clamp(modify(red, operation, amount), 0, 255);
+					case GREEN -> green = Mth.clamp(modify(green, operation, amount), 0, 255);
+					default -> blue = Mth.clamp(modify(blue, operation, amount), 0, 255);
+				}
+			}
+		}
+
+		return rgbCurrent ? ColorUtil.combineARGB(alpha, red, green, blue) : ColorUtil.AHSVtoARGB(alpha, hue, saturation, value);
+	}
+
+	private static int modify(int value, int operation, int amount)
+	{
+		return switch (operation)
+		{
+			case 0 -> value + amount;
+			case 1 -> value - amount;
+			default -> amount;
+		};
+	}
+
+	/**
+	 * Collects modifiers one at a time.  Builders can be cleared and reused, so parsers don't need to allocate for every color.
+	 */
+	static final class Builder
+	{
+		private byte[] steps = new byte[4];
+		private int[] amounts = new int[4];
+		private int size = 0;
+
+		/**
+		 * Adds a modifier, which must be valid according to {@link ColorModifiers#isValid}.
+		 */
+		Builder add(char operation, char type, int amount)
+		{
+			if (size == steps.length)
+			{
+				steps = Arrays.copyOf(steps, size * 2);
+				amounts = Arrays.copyOf(amounts, size * 2);
+			}
+			steps[size] = (byte)((OPERATIONS.indexOf(operation) << 3) | TYPES.indexOf(Character.toLowerCase(type)));
+			amounts[size] = amount;
+			size++;
+			return this;
+		}
+
+		void clear()
+		{
+			size = 0;
+		}
+
+		/**
+		 * Applies the modifiers added so far to the given ARGB color.
+		 */
+		int apply(int color)
+		{
+			return ColorModifiers.apply(steps, amounts, size, color);
+		}
+
+		ColorModifiers build()
+		{
+			return size == 0 ? NONE : new ColorModifiers(Arrays.copyOf(steps, size), Arrays.copyOf(amounts, size), size);
+		}
+	}
+}
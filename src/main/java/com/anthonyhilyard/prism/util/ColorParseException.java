@@ -0,0 +1,33 @@
+package com.anthonyhilyard.prism.util;
+
+/**
+ * Thrown when a color can't be parsed.  Includes the position of the problem within the color string, so it can be pointed out to users.
+ */
+public class ColorParseException extends IllegalArgumentException
+{
+	private final String input;
+	private final int position;
+
+	public ColorParseException(String message, String input, int position)
+	{
+		super(input != null ? String.format("%s at position %d in \"%s\"", message, position, input) : message);
+		this.input = input;
+		this.position = position;
+	}
+
+	/**
+	 * Returns the color string that couldn't be parsed, or null if the value wasn't a string.
+	 */
+	public String getInput()
+	{
+		return input;
+	}
+
+	/**
+	 * Returns the position of the problem within the color string.
+	 */
+	public int getPosition()
+	{
+		return position;
+	}
+}
@@ -0,0 +1,662 @@
+package com.anthonyhilyard.prism.util;
+
+import java.util.List;
+
+import com.anthonyhilyard.prism.text.DynamicColor;
+import com.google.common.collect.Lists;
+
+import net.minecraft.network.chat.TextColor;
+
+/**
+ * A single-pass parser for the color formats described by {@link ConfigHelper#colorFormatDocumentation()}.
+ * Strings are read in place without splitting them or using regular expressions, so apart from the names of animation options,
+ * the only objects created are the resulting colors.
+ * <p>
+ * In lenient mode, invalid colors within an animated color and invalid modifiers are skipped, and the first problem is only reported
+ * if no valid colors were found.  In strict mode, any problem is reported immediately.
+ */
+final class ColorParser
+{
+	static record AnimationHeader(float duration, DynamicColor.Easing easing, DynamicColor.Mode mode) {}
+
+	static final AnimationHeader DEFAULT_HEADER = new AnimationHeader(10.0f, DynamicColor.Easing.LINEAR, DynamicColor.Mode.LOOP);
+
+	// Returned in place of a color value when a color couldn't be parsed.
+	private static final long INVALID = -1L;
+
+	// Set on a parsed base color value when it came from the "transparent" keyword.
+	private static final long TRANSPARENT = 1L << 32;
+
+	private final boolean allowAlpha;
+	private final boolean strict;
+	private final boolean validateOnly;
+	private AnimationHeader header = DEFAULT_HEADER;
+	private IColor firstColor = null;
+	private Float firstStopDuration = null;
+	private List<IColor> colors = null;
+	private List<Float> stopDurations = null;
+	private ColorParseException firstError = null;
+
+	// Only used when validating, since no colors are created.
+	private int colorCount = 0;
+	private boolean failed = false;
+
+	// The string currently being parsed with any tildes removed, the string as it was given, and a reusable buffer for building color names.
+	private String input = null;
+	private String originalInput = null;
+	private char[] nameBuffer = new char[16];
+
+	// Reused for each color that has modifiers.
+	private ColorModifiers.Builder modifiers = null;
+
+	ColorParser(boolean allowAlpha, boolean strict)
+	{
+		this(allowAlpha, strict, false);
+	}
+
+	private ColorParser(boolean allowAlpha, boolean strict, boolean validateOnly)
+	{
+		this.allowAlpha = allowAlpha;
+		this.strict = strict;
+		this.validateOnly = validateOnly;
+	}
+
+	/**
+	 * Creates a parser that only checks the syntax of colors, without creating them.
+	 * Its results match lenient parsing, so {@link #isValid()} is true exactly when {@link #finish()} would have returned a color.
+	 */
+	static ColorParser validator()
+	{
+		return new ColorParser(true, false, true);
+	}
+
+	void setHeader(AnimationHeader header)
+	{
+		this.header = header;
+	}
+
+	/**
+	 * Parses a color string, which is either a single color or an animated color with entries separated by underscores.
+	 */
+	void addString(String value)
+	{
+		// Tildes have always been ignored.
+		originalInput = value;
+		input = value.indexOf('~') >= 0 ? value.replace("~", "") : value;
+
+		if (input.indexOf('_') < 0)
+		{
+			addEntry(0, input.length(), false);
+			return;
+		}
+
+		// Trailing separators are ignored.
+		int length = input.length();
+		while (length > 0 && input.charAt(length - 1) == '_')
+		{
+			length--;
+		}
+		if (length == 0)
+		{
+			error("Expected a color", 0, true);
+			return;
+		}
+
+		// The first entry is the duration and options, but if it isn't valid it's treated as a color instead.
+		int separator = input.indexOf('_');
+		int headerEnd = separator >= 0 && separator < length ? separator : length;
+		AnimationHeader parsedHeader = parseHeader(input, 0, headerEnd);
+		int start = 0;
+		if (parsedHeader != null)
+		{
+			header = parsedHeader;
+			start = headerEnd + 1;
+			if (start >= length)
+			{
+				error("Expected a color after the duration", headerEnd, true);
+				return;
+			}
+		}
+
+		// Colors can only have their own durations if there are multiple colors.
+		boolean allowDuration = input.indexOf('_', start) >= 0 && input.indexOf('_', start) < length;
+
+		for (int entryStart = start; entryStart <= length;)
+		{
+			int entryEnd = input.indexOf('_', entryStart);
+			if (entryEnd < 0 || entryEnd > length)
+			{
+				entryEnd = length;
+			}
+
+			// Color names with multiple words, such as dark_purple, use the same separator as entries, so join them back together.
+			if (entryEnd < length && isNameOnly(entryStart, entryEnd) && parseBaseColor(entryStart, entryEnd, false) == INVALID)
+			{
+				int nextEnd = input.indexOf('_', entryEnd + 1);
+				if (nextEnd < 0 || nextEnd > length)
+				{
+					nextEnd = length;
+				}
+				if (parseBaseColor(entryStart, findBaseEnd(entryEnd + 1, nextEnd, allowDuration), false) != INVALID)
+				{
+					entryEnd = nextEnd;
+				}
+			}
+
+			addEntry(entryStart, entryEnd, allowDuration);
+			entryStart = entryEnd + 1;
+		}
+	}
+
+	/**
+	 * Adds a single color, which may be a string or a number.
+	 * @param allowDuration Whether string colors may specify their own duration, which is only used for animated colors.
+	 */
+	void addValue(Object value, boolean allowDuration)
+	{
+		input = null;
+		originalInput = null;
+		if (value == null)
+		{
+			error("Expected a color but found nothing", 0, true);
+		}
+		else if (value instanceof String string)
+		{
+			originalInput = string;
+			input = string.indexOf('~') >= 0 ? string.replace("~", "") : string;
+			addEntry(0, input.length(), allowDuration);
+		}
+		else if (value instanceof Number number)
+		{
+			if (validateOnly)
+			{
+				colorCount++;
+				return;
+			}
+			addColor(finishColor(number.intValue(), false, 0, 0), null);
+		}
+		else
+		{
+			error("Expected a color but found " + value.getClass().getSimpleName(), 0, false);
+		}
+	}
+
+	/**
+	 * Returns the parsed color, which is animated if more than one color was added.
+	 * @throws ColorParseException If no valid colors were added.
+	 */
+	IColor finish()
+	{
+		if (colors != null)
+		{
+			return DynamicColor.canonicalize(createAnimatedColor(colors, stopDurations, header));
+		}
+		else if (firstColor != null)
+		{
+			return firstColor;
+		}
+		throw firstError != null ? firstError : new ColorParseException("Expected a color", originalInput, 0);
+	}
+
+	/**
+	 * Returns true if a validating parser found at least one valid color and no problems that make the whole color invalid.
+	 */
+	boolean isValid()
+	{
+		return !failed && colorCount > 0;
+	}
+
+	private void addColor(IColor color, Float stopDuration)
+	{
+		if (firstColor == null)
+		{
+			firstColor = color;
+			firstStopDuration = stopDuration;
+			return;
+		}
+
+		if (colors == null)
+		{
+			colors = Lists.newArrayList(firstColor);
+			stopDurations = Lists.newArrayList(firstStopDuration);
+		}
+		colors.add(color);
+		stopDurations.add(stopDuration);
+	}
+
+	private void error(String message, int position, boolean fatal)
+	{
+		if (validateOnly)
+		{
+			failed |= fatal;
+			return;
+		}
+
+		ColorParseException exception = new ColorParseException(message, originalInput, getOriginalPosition(position));
+		if (strict || fatal)
+		{
+			throw exception;
+		}
+		else if (firstError == null)
+		{
+			firstError = exception;
+		}
+	}
+
+	/**
+	 * Converts a position in the parsed string to the same position in the string as it was given, which may have had tildes.
+	 */
+	private int getOriginalPosition(int position)
+	{
+		if (originalInput == input)
+		{
+			return position;
+		}
+
+		int remaining = position;
+		for (int i = 0; i < originalInput.length(); i++)
+		{
+			if (originalInput.charAt(i) != '~' && remaining-- == 0)
+			{
+				return i;
+			}
+		}
+		return originalInput.length();
+	}
+
+	/**
+	 * Parses one color entry in the format "<color>[<modifiers>][@<duration>]".
+	 */
+	private void addEntry(int start, int end, boolean allowDuration)
+	{
+		Float stopDuration = null;
+		int colorEnd = end;
+		if (allowDuration)
+		{
+			int at = input.lastIndexOf('@', end - 1);
+			if (at >= start)
+			{
+				float duration = parseFloat(input, at + 1, end);
+				if (Float.isNaN(duration))
+				{
+					error("Invalid duration", at + 1, true);
+				}
+				stopDuration = Math.max(duration, 0.0f);
+				colorEnd = at;
+			}
+		}
+
+		// Modifiers start at the first +, -, or = sign.
+		int baseEnd = findBaseEnd(start, colorEnd, false);
+		long base = parseBaseColor(start, baseEnd, true);
+		if (base == INVALID)
+		{
+			return;
+		}
+		else if (validateOnly)
+		{
+			// Invalid modifiers are skipped rather than invalidating the color, so they don't need to be checked.
+			colorCount++;
+			return;
+		}
+
+		addColor(finishColor((int)base, (base & TRANSPARENT) != 0, baseEnd, colorEnd), stopDuration);
+	}
+
+	/**
+	 * Applies default alpha and any modifiers to a color, and creates the final color.
+	 */
+	private IColor finishColor(int value, boolean isTransparent, int modifiersStart, int modifiersEnd)
+	{
+		// If alpha is 0 but the color isn't 0x00000000, assume alpha is intended to be 0xFF.
+		// Only downside is if users want black borders they'd have to specify "0xFF000000".
+		if (!isTransparent && value > 0 && value <= 0xFFFFFF)
+		{
+			value |= 0xFF000000;
+		}
+
+		// Colors without alpha are treated as opaque when modifiers are applied.
+		if (Integer.compareUnsigned(value, 0xFFFFFF) < 0)
+		{
+			value |= 0xFF000000;
+		}
+
+		if (modifiersStart < modifiersEnd)
+		{
+			if (modifiers == null)
+			{
+				modifiers = new ColorModifiers.Builder();
+			}
+			modifiers.clear();
+
+			for (int modifierStart = modifiersStart; modifierStart < modifiersEnd;)
+			{
+				int modifierEnd = modifierStart + 1;
+				while (modifierEnd < modifiersEnd && !isModifierSign(input.charAt(modifierEnd)))
+				{
+					modifierEnd++;
+				}
+				addModifier(modifierStart, modifierEnd);
+				modifierStart = modifierEnd;
+			}
+			value = modifiers.apply(value);
+		}
+
+		// If alpha is disallowed, always force it to 0xFF.
+		if (!allowAlpha)
+		{
+			value |= 0xFF000000;
+		}
+
+		return (IColor)TextColor.fromRgb(value);
+	}
+
+	private void addModifier(int start, int end)
+	{
+		if (end - start < 3 || !ColorModifiers.isValid(input.charAt(start), input.charAt(start + 1)))
+		{
+			error("Invalid modifier, expected one of h, s, v, r, g, b, or a followed by an amount", start, false);
+			return;
+		}
+
+		long amount = parseUnsigned(input, start + 2, end, 10);
+		if (amount < 0 || amount > Integer.MAX_VALUE)
+		{
+			error("Invalid modifier amount", start + 2, false);
+			return;
+		}
+
+		modifiers.add(input.charAt(start), input.charAt(start + 1), (int)amount);
+	}
+
+	/**
+	 * Parses a color code or name without modifiers.
+	 * @return The color value, with the {@link #TRANSPARENT} flag if applicable, or {@link #INVALID}.
+	 */
+	private long parseBaseColor(int start, int end, boolean reportErrors)
+	{
+		if (start >= end)
+		{
+			if (reportErrors)
+			{
+				error("Expected a color", start, false);
+			}
+			return INVALID;
+		}
+
+		final char first = input.charAt(start);
+		final boolean isHex = first == '#' || input.startsWith("0x", start);
+		if (isHex)
+		{
+			// Both longform and shorthand hex notations are valid: #RGB, #ARGB, #RRGGBB, #AARRGGBB
+			final int digitsStart = first == '#' ? start + 1 : start + 2;
+			final int digits = end - digitsStart;
+			long value = digits == 3 || digits == 4 || digits == 6 || digits == 8 ? parseUnsigned(input, digitsStart, end, 16) : INVALID;
+			if (value != INVALID)
+			{
+				if (digits <= 4)
+				{
+					// Double each digit of shorthand codes.
+					long expanded = 0;
+					for (int shift = (digits - 1) * 4; shift >= 0; shift -= 4)
+					{
+						long digit = (value >> shift) & 0xF;
+						expanded = (expanded << 8) | (digit << 4) | digit;
+					}
+					value = expanded;
+				}
+				return value;
+			}
+
+			// Color names can also be preceded by #.
+			if (first == '#')
+			{
+				long nameValue = parseColorName(start + 1, end);
+				if (nameValue != INVALID)
+				{
+					return nameValue;
+				}
+			}
+
+			if (reportErrors)
+			{
+				error("Invalid hex color code, expected 3, 4, 6, or 8 hex digits", digitsStart, false);
+			}
+			return INVALID;
+		}
+
+		if (first >= '0' && first <= '9')
+		{
+			long value = end - start <= 10 ? parseUnsigned(input, start, end, 10) : INVALID;
+			if (value != INVALID && value <= 0xFFFFFFFFL)
+			{
+				return value;
+			}
+
+			if (reportErrors)
+			{
+				error("Invalid decimal color code, expected a number from 0 to 4294967295", start, false);
+			}
+			return INVALID;
+		}
+
+		long value = parseColorName(start, end);
+		if (value == INVALID && reportErrors)
+		{
+			error("Unknown color name \"" + input.substring(start, end) + "\"", start, false);
+		}
+		return value;
+	}
+
+	private long parseColorName(int start, int end)
+	{
+		// Transparent is a special case.
+		if (end - start == 11 && input.regionMatches(true, start, "transparent", 0, 11))
+		{
+			return TRANSPARENT;
+		}
+
+		// Names are matched ignoring case, spaces, and underscores, so "Dark Blue" and "DARK_BLUE" both match "darkblue".
+		if (nameBuffer.length < end - start)
+		{
+			nameBuffer = new char[end - start];
+		}
+		int length = 0;
+		for (int i = start; i < end; i++)
+		{
+			char c = input.charAt(i);
+			if (c != ' ' && c != '_')
+			{
+				nameBuffer[length++] = Character.toLowerCase(c);
+			}
+		}
+
+		if (validateOnly)
+		{
+			return MinecraftColors.isFormattedColorName(nameBuffer, length) || WebColors.isFormattedColorName(nameBuffer, length) ? 0 : INVALID;
+		}
+
+		String name = new String(nameBuffer, 0, length);
+
+		// Check if this is a standard minecraft color and if not, a web color.
+		Integer minecraftColor = MinecraftColors.getFormattedColor(name);
+		if (minecraftColor != null)
+		{
+			return minecraftColor & 0xFFFFFFFFL;
+		}
+
+		IColor webColor = WebColors.getFormattedColor(name);
+		if (webColor != null)
+		{
+			return webColor.getValue() & 0xFFFFFFFFL;
+		}
+		return INVALID;
+	}
+
+	/**
+	 * Parses the first entry of an animated color, in the format "<duration>[:<option>]...".
+	 * @return The parsed header, or null if the entry isn't a valid header.
+	 */
+	static AnimationHeader parseHeader(String value, int start, int end)
+	{
+		// Trailing separators are ignored.
+		while (end > start && value.charAt(end - 1) == ':')
+		{
+			end--;
+		}
+		if (end <= start)
+		{
+			return null;
+		}
+
+		int partEnd = value.indexOf(':', start);
+		if (partEnd < 0 || partEnd > end)
+		{
+			partEnd = end;
+		}
+
+		float duration = parseFloat(value, start, partEnd);
+		if (Float.isNaN(duration))
+		{
+			return null;
+		}
+
+		DynamicColor.Easing easing = DynamicColor.Easing.LINEAR;
+		DynamicColor.Mode mode = DynamicColor.Mode.LOOP;
+		while (partEnd < end)
+		{
+			int partStart = partEnd + 1;
+			partEnd = value.indexOf(':', partStart);
+			if (partEnd < 0 || partEnd > end)
+			{
+				partEnd = end;
+			}
+
+			String part = value.substring(partStart, partEnd);
+			DynamicColor.Easing partEasing = DynamicColor.Easing.byName(part);
+			DynamicColor.Mode partMode = partEasing == null ? DynamicColor.Mode.byName(part) : null;
+			if (partEasing != null)
+			{
+				easing = partEasing;
+			}
+			else if (partMode != null)
+			{
+				mode = partMode;
+			}
+			else
+			{
+				return null;
+			}
+		}
+		return new AnimationHeader(duration, easing, mode);
+	}
+
+	/**
+	 * Builds an animated color from the given colors and per-color durations.
+	 * Colors with no specified duration evenly share whatever is left of the total duration.
+	 */
+	private static DynamicColor createAnimatedColor(List<IColor> colors, List<Float> stopDurations, AnimationHeader header)
+	{
+		// Non-looping colors never fade from the last color, so its duration isn't used.
+		int segmentCount = header.mode() == DynamicColor.Mode.LOOP ? colors.size() : colors.size() - 1;
+
+		float specifiedDuration = 0.0f;
+		int unspecifiedCount = 0;
+		for (int i = 0; i < segmentCount; i++)
+		{
+			if (stopDurations.get(i) != null)
+			{
+				specifiedDuration += stopDurations.get(i);
+			}
+			else
+			{
+				unspecifiedCount++;
+			}
+		}
+
+		// Keep the existing even split when no timing options were given.
+		if (unspecifiedCount == colors.size() && header.easing() == DynamicColor.Easing.LINEAR)
+		{
+			return new DynamicColor(colors, header.duration());
+		}
+
+		float sharedDuration = unspecifiedCount > 0 ? Math.max(header.duration() - specifiedDuration, 0.0f) / unspecifiedCount : 0.0f;
+		List<DynamicColor.Keyframe> keyframes = Lists.newArrayList();
+		for (int i = 0; i < colors.size(); i++)
+		{
+			Float stopDuration = stopDurations.get(i);
+			keyframes.add(new DynamicColor.Keyframe(colors.get(i), stopDuration != null ? stopDuration : (i < segmentCount ? sharedDuration : 0.0f)));
+		}
+		return new DynamicColor(keyframes, header.easing(), header.mode());
+	}
+
+	private static boolean isModifierSign(char c)
+	{
+		return c == '+' || c == '-' || c == '=';
+	}
+
+	/**
+	 * Returns the end of the color at the start of the given range, before any modifiers or duration.
+	 */
+	private int findBaseEnd(int start, int end, boolean allowDuration)
+	{
+		int i = start;
+		while (i < end && !isModifierSign(input.charAt(i)) && !(allowDuration && input.charAt(i) == '@'))
+		{
+			i++;
+		}
+		return i;
+	}
+
+	/**
+	 * Returns true if the given range has no modifiers or duration, so it could be the first word of a color name.
+	 */
+	private boolean isNameOnly(int start, int end)
+	{
+		return findBaseEnd(start, end, true) == end;
+	}
+
+	/**
+	 * Parses an unsigned integer with no sign, returning {@link #INVALID} if it isn't valid or doesn't fit in a long.
+	 */
+	private static long parseUnsigned(String value, int start, int end, int radix)
+	{
+		if (start >= end || end - start > (radix == 16 ? 15 : 18))
+		{
+			return INVALID;
+		}
+
+		long result = 0;
+		for (int i = start; i < end; i++)
+		{
+			int digit = Character.digit(value.charAt(i), radix);
+			if (digit < 0)
+			{
+				return INVALID;
+			}
+			result = result * radix + digit;
+		}
+		return result;
+	}
+
+	/**
+	 * Parses a float, returning NaN if it isn't valid.  Plain whole numbers are parsed in place, and anything else falls back to {@link Float#parseFloat}.
+	 */
+	private static float parseFloat(String value, int start, int end)
+	{
+		long whole = end - start <= 7 ? parseUnsigned(value, start, end, 10) : INVALID;
+		if (whole != INVALID)
+		{
+			return (float)whole;
+		}
+
+		try
+		{
+			return Float.parseFloat(value.substring(start, end));
+		}
+		catch (NumberFormatException e)
+		{
+			return Float.NaN;
+		}
+	}
+}
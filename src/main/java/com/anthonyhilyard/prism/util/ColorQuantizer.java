@@ -0,0 +1,295 @@
+package com.anthonyhilyard.prism.util;
+
+import java.util.Arrays;
+
+/**
+ * Reduces a histogram of colors to a small palette of representative colors.
+ * The palette is first found with a weighted median cut, then refined with a bounded number of k-means iterations.
+ * Results only depend on the colors in the histogram and their counts, so the same image always gives the same palette.
+ */
+final class ColorQuantizer
+{
+	private final int[] colors;
+	private final float[] scores;
+	private final int colorCount;
+
+	private ColorQuantizer(ColorHistogram histogram)
+	{
+		int[] unsortedColors = new int[histogram.size()];
+		float[] unsortedScores = new float[histogram.size()];
+		colorCount = histogram.getWeightedColors(unsortedColors, unsortedScores);
+
+		// Sort the colors so the result doesn't depend on the histogram's internal layout.
+		long[] entries = new long[colorCount];
+		for (int i = 0; i < colorCount; i++)
+		{
+			entries[i] = ((long)unsortedColors[i] << 32) | (Float.floatToRawIntBits(unsortedScores[i]) & 0xFFFFFFFFL);
+		}
+		Arrays.sort(entries);
+
+		colors = new int[colorCount];
+		scores = new float[colorCount];
+		for (int i = 0; i < colorCount; i++)
+		{
+			colors[i] = (int)(entries[i] >>> 32);
+			scores[i] = Float.intBitsToFloat((int)entries[i]);
+		}
+	}
+
+	/**
+	 * Returns up to the given number of colors that best represent the histogram, sorted from most to least significant.
+	 * Black and transparent colors are ignored, the same as when finding the dominant color.
+	 * @param histogram The histogram of colors.
+	 * @param count The maximum number of colors to return.
+	 * @param maxIterations The maximum number of refinement passes over the colors.  0 uses the median cut palette as-is.
+	 */
+	static int[] quantize(ColorHistogram histogram, int count, int maxIterations)
+	{
+		return new ColorQuantizer(histogram).quantize(count, maxIterations);
+	}
+
+	private int[] quantize(int count, int maxIterations)
+	{
+		if (colorCount == 0 || count <= 0)
+		{
+			return new int[0];
+		}
+
+		final int[][] centroids = medianCut(Math.min(count, colorCount));
+		final int clusterCount = centroids.length;
+		final int[] assignments = new int[colorCount];
+		Arrays.fill(assignments, -1);
+		final double[][] sums = new double[clusterCount][5];
+
+		// Refine the palette by moving each color to its nearest cluster, until no colors move or the iteration budget runs out.
+		for (int iteration = 0; iteration <= maxIterations; iteration++)
+		{
+			boolean changed = false;
+			for (double[] sum : sums)
+			{
+				Arrays.fill(sum, 0.0);
+			}
+
+			for (int i = 0; i < colorCount; i++)
+			{
+				int cluster = nearest(centroids, colors[i]);
+				if (cluster != assignments[i])
+				{
+					assignments[i] = cluster;
+					changed = true;
+				}
+				accumulate(sums[cluster], colors[i], scores[i]);
+			}
+
+			if (!changed || iteration == maxIterations)
+			{
+				break;
+			}
+
+			for (int cluster = 0; cluster < clusterCount; cluster++)
+			{
+				if (sums[cluster][4] > 0.0)
+				{
+					centroids[cluster] = mean(sums[cluster]);
+				}
+			}
+		}
+
+		// Sort the clusters by their total weight, breaking ties by color so the order is stable.
+		Integer[] order = new Integer[clusterCount];
+		int resultCount = 0;
+		for (int cluster = 0; cluster < clusterCount; cluster++)
+		{
+			if (sums[cluster][4] > 0.0)
+			{
+				order[resultCount++] = cluster;
+			}
+		}
+		Arrays.sort(order, 0, resultCount, (a, b) ->
+		{
+			int result = Double.compare(sums[b][4], sums[a][4]);
+			return result != 0 ? result : Integer.compareUnsigned(pack(centroids[a]), pack(centroids[b]));
+		});
+
+		int[] palette = new int[resultCount];
+		for (int i = 0; i < resultCount; i++)
+		{
+			palette[i] = pack(centroids[order[i]]);
+		}
+		return palette;
+	}
+
+	/**
+	 * Splits the colors into the given number of boxes, each time splitting the heaviest box at the weighted median of its widest channel.
+	 * @return The weighted mean color of each box, as alpha, red, green, and blue channels.
+	 */
+	private int[][] medianCut(int count)
+	{
+		final int[] boxStarts = new int[count];
+		final int[] boxEnds = new int[count];
+		final double[] boxWeights = new double[count];
+		boxEnds[0] = colorCount;
+		boxWeights[0] = sumScores(0, colorCount);
+		int boxCount = 1;
+
+		final int[] sortedColors = new int[colorCount];
+		final float[] sortedScores = new float[colorCount];
+
+		while (boxCount < count)
+		{
+			// Find the heaviest box that can still be split.
+			int box = -1;
+			for (int i = 0; i < boxCount; i++)
+			{
+				if (boxEnds[i] - boxStarts[i] > 1 && (box == -1 || boxWeights[i] > boxWeights[box]))
+				{
+					box = i;
+				}
+			}
+			if (box == -1)
+			{
+				break;
+			}
+
+			final int start = boxStarts[box];
+			final int end = boxEnds[box];
+			final int shift = widestChannel(start, end);
+			sortByChannel(start, end, shift, sortedColors, sortedScores);
+
+			// Split at the weighted median, making sure neither half is empty.
+			double half = boxWeights[box] / 2.0;
+			double total = 0.0;
+			int split = end - 1;
+			for (int i = start; i < end - 1; i++)
+			{
+				total += scores[i];
+				if (total >= half)
+				{
+					split = i + 1;
+					break;
+				}
+			}
+
+			boxEnds[box] = split;
+			boxWeights[box] = sumScores(start, split);
+			boxStarts[boxCount] = split;
+			boxEnds[boxCount] = end;
+			boxWeights[boxCount] = sumScores(split, end);
+			boxCount++;
+		}
+
+		final int[][] centroids = new int[boxCount][];
+		for (int box = 0; box < boxCount; box++)
+		{
+			double[] sum = new double[5];
+			for (int i = boxStarts[box]; i < boxEnds[box]; i++)
+			{
+				accumulate(sum, colors[i], scores[i]);
+			}
+			centroids[box] = mean(sum);
+		}
+		return centroids;
+	}
+
+	private double sumScores(int start, int end)
+	{
+		double total = 0.0;
+		for (int i = start; i < end; i++)
+		{
+			total += scores[i];
+		}
+		return total;
+	}
+
+	/**
+	 * Returns the bit shift of the red, green, or blue channel with the largest range of values in the given colors.
+	 */
+	private int widestChannel(int start, int end)
+	{
+		int bestShift = 16;
+		int bestRange = -1;
+		for (int shift = 16; shift >= 0; shift -= 8)
+		{
+			int min = 0xFF, max = 0;
+			for (int i = start; i < end; i++)
+			{
+				int value = (colors[i] >> shift) & 0xFF;
+				min = Math.min(min, value);
+				max = Math.max(max, value);
+			}
+			if (max - min > bestRange)
+			{
+				bestRange = max - min;
+				bestShift = shift;
+			}
+		}
+		return bestShift;
+	}
+
+	/**
+	 * Sorts a range of colors by one channel using a stable counting sort.
+	 */
+	private void sortByChannel(int start, int end, int shift, int[] sortedColors, float[] sortedScores)
+	{
+		final int[] offsets = new int[257];
+		for (int i = start; i < end; i++)
+		{
+			offsets[((colors[i] >> shift) & 0xFF) + 1]++;
+		}
+		for (int value = 0; value < 256; value++)
+		{
+			offsets[value + 1] += offsets[value];
+		}
+		for (int i = start; i < end; i++)
+		{
+			int index = start + offsets[(colors[i] >> shift) & 0xFF]++;
+			sortedColors[index] = colors[i];
+			sortedScores[index] = scores[i];
+		}
+		System.arraycopy(sortedColors, start, colors, start, end - start);
+		System.arraycopy(sortedScores, start, scores, start, end - start);
+	}
+
+	private static int nearest(int[][] centroids, int color)
+	{
+		final int a = (color >>> 24) & 0xFF, r = (color >> 16) & 0xFF, g = (color >> 8) & 0xFF, b = color & 0xFF;
+		int best = 0;
+		int bestDistance = Integer.MAX_VALUE;
+		for (int cluster = 0; cluster < centroids.length; cluster++)
+		{
+			int[] centroid = centroids[cluster];
+			int da = a - centroid[0], dr = r - centroid[1], dg = g - centroid[2], db = b - centroid[3];
+			int distance = da * da + dr * dr + dg * dg + db * db;
+			if (distance < bestDistance)
+			{
+				bestDistance = distance;
+				best = cluster;
+			}
+		}
+		return best;
+	}
+
+	private static void accumulate(double[] sum, int color, float score)
+	{
+		sum[0] += ((color >>> 24) & 0xFF) * (double)score;
+		sum[1] += ((color >> 16) & 0xFF) * (double)score;
+		sum[2] += ((color >> 8) & 0xFF) * (double)score;
+		sum[3] += (color & 0xFF) * (double)score;
+		sum[4] += score;
+	}
+
+	private static int[] mean(double[] sum)
+	{
+		int[] channels = new int[4];
+		for (int channel = 0; channel < 4; channel++)
+		{
+			channels[channel] = sum[4] > 0.0 ? (int)Math.round(sum[channel] / sum[4]) : 0;
+		}
+		return channels;
+	}
+
+	private static int pack(int[] channels)
+	{
+		return (channels[0] << 24) | (channels[1] << 16) | (channels[2] << 8) | channels[3];
+	}
+}
@@ -1,19 +1,23 @@
 package com.anthonyhilyard.prism.util;
 
 import java.util.Arrays;
-import java.util.Collections;
 import java.util.List;
-import java.util.Map;
-import java.util.function.BiFunction;
+import java.util.Optional;
 
 import com.anthonyhilyard.prism.text.DynamicColor;
-
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.Lists;
 
 import net.minecraft.network.chat.TextColor;
 
 public class ConfigHelper
 {
+	private static record ParsedColorKey(Object value, boolean allowAlpha) {}
+
+	// Parsed colors are shared or immutable, and animated ones are copied before being returned, so the same config values can share them across reloads.
+	private static final Cache<ParsedColorKey, Optional<IColor>> parsedColorCache = CacheBuilder.newBuilder().maximumSize(4096).recordStats().build();
+
 	public static record ColorFormatDocumentation(String name, String description, List<String> examples)
 	{
 		public ColorFormatDocumentation(String name, String description, String... examples) { this(name, description, Arrays.asList(examples)); }
@@ -43,8 +47,10 @@ public class ConfigHelper
 															"Valid amounts are 0 to 255 for all types except hue, which accepts 0 to 359.",
 											"\"red+h15\"", "\"#saddlebrown-v20+s5\"", "\"10_aqua_aqua+v15-h5\"", "\"#F4C-r15-v10=a40\""),
 				new ColorFormatDocumentation("Animated color", "An animated color that fades from one to another in sequence.\n" +
-															"A string in the format \"<duration in seconds>_<list of color definitions separated by underscores>\".  Must be quoted.",
-											"\"10_black_#7FFF00\"", "\"5.5_gold_orange_orangered\"", "\"20_red_orange_yellow_green_blue_purple\"")
+															"A string in the format \"<duration in seconds>_<list of color definitions separated by underscores>\".  Must be quoted.\n" +
+															"The duration can be followed by options separated by colons: loop, pingpong, or once to control playback, and linear, easein, easeout, easeinout, or step to control fading.\n" +
+															"Any color can be followed by @<seconds> to set how long it takes to fade to the next color.  Colors without one share the rest of the duration.",
+											"\"10_black_#7FFF00\"", "\"5.5_gold_orange_orangered\"", "\"20_red_orange_yellow_green_blue_purple\"", "\"4:pingpong:easeinout_gold_red@1\"")
 			);
 		}
 		else
@@ -65,8 +71,10 @@ public class ConfigHelper
 															"Using any modifiers will REQUIRE the key to be quoted.\n",
 											"\"red+h15\"", "\"#saddlebrown-v20+s5\"", "\"10_aqua_aqua+v15-h5\"", "\"#F4C-r15-v10=a40\""),
 				new ColorFormatDocumentation("Animated color", "An animated color that fades from one to another in sequence.\n" +
-															"A string in the format \"<duration in seconds>_<list of color definitions separated by underscores>\".  May or may not be quoted.",
-											"\"10_black_#7FFF00\"", "\"5.5_gold_orange_orangered\"", "\"20_red_orange_yellow_green_blue_purple\"")
+															"A string in the format \"<duration in seconds>_<list of color definitions separated by underscores>\".  May or may not be quoted.\n" +
+															"The duration can be followed by options separated by colons: loop, pingpong, or once to control playback, and linear, easein, easeout, easeinout, or step to control fading.\n" +
+															"Any color can be followed by @<seconds> to set how long it takes to fade to the next color.  Colors without one share the rest of the duration.",
+											"\"10_black_#7FFF00\"", "\"5.5_gold_orange_orangered\"", "\"20_red_orange_yellow_green_blue_purple\"", "\"4:pingpong:easeinout_gold_red@1\"")
 			);
 		}
 	}
@@ -77,242 +85,146 @@ public class ConfigHelper
 		return TextColor.fromRgb(applyModifiers(modifiers, DynamicColor.fromRgb(color.getValue())).getValue());
 	}
 
+	/**
+	 * Applies the given modifiers to a color.  Animated colors have the modifiers applied to each of their keyframes.
+	 * @return The modified color, or the original color if there were no valid modifiers.
+	 */
 	public static DynamicColor applyModifiers(List<String> modifiers, DynamicColor color)
 	{
-		final Map<Character, BiFunction<Integer, Integer, Integer>> modifierFuncs = Map.of(
-				'+', (v, a) -> v + a,
-				'-', (v, a) -> v - a,
-				'=', (v, a) -> a
-			);
-
-		// Now apply all specified modifiers.
-		for (String modifier : modifiers)
+		ColorModifiers compiled = ColorModifiers.compile(modifiers);
+		if (compiled.isEmpty())
 		{
-			if (modifier.length() < 3)
-			{
-				continue;
-			}
+			return color;
+		}
+		else if (color.isAnimated())
+		{
+			return applyModifiers(compiled, color);
+		}
 
-			char type = modifier.toLowerCase().charAt(1);
-			int amount;
-			BiFunction<Integer, Integer, Integer> mod;
-			try
-			{
-				amount = Integer.parseInt(modifier.substring(2));
-				mod = modifierFuncs.get(modifier.charAt(0));
-			}
-			catch (Exception e)
-			{
-				continue;
-			}
+		int value = compiled.apply(color.getValue());
+		return DynamicColor.fromARGB((value >> 24) & 0xFF, (value >> 16) & 0xFF, (value >> 8) & 0xFF, value & 0xFF);
+	}
 
-			if (mod == null)
+	private static DynamicColor applyModifiers(ColorModifiers modifiers, DynamicColor color)
+	{
+		List<DynamicColor.Keyframe> keyframes = color.getKeyframes();
+		List<DynamicColor.Keyframe> modified = Lists.newArrayListWithCapacity(keyframes.size());
+		for (DynamicColor.Keyframe keyframe : keyframes)
+		{
+			IColor keyframeColor = keyframe.color();
+			if (keyframeColor instanceof DynamicColor dynamicColor && dynamicColor.isAnimated())
 			{
-				continue;
+				keyframeColor = applyModifiers(modifiers, dynamicColor);
 			}
-
-			switch (type)
+			else
 			{
-				case 'h':
-					color = DynamicColor.fromAHSV(color.alpha(), mod.apply(color.hue(), amount), color.saturation(), color.value());
-					break;
-				case 's':
-					color = DynamicColor.fromAHSV(color.alpha(), color.hue(), mod.apply(color.saturation(), amount), color.value());
-					break;
-				case 'v':
-					color = DynamicColor.fromAHSV(color.alpha(), color.hue(), color.saturation(), mod.apply(color.value(), amount));
-					break;
-				case 'r':
-					color = DynamicColor.fromARGB(color.alpha(), mod.apply(color.red(), amount), color.green(), color.blue());
-					break;
-				case 'g':
-					color = DynamicColor.fromARGB(color.alpha(), color.red(), mod.apply(color.green(), amount), color.blue());
-					break;
-				case 'b':
-					color = DynamicColor.fromARGB(color.alpha(), color.red(), color.green(), mod.apply(color.blue(), amount));
-					break;
-				case 'a':
-					color = DynamicColor.fromARGB(mod.apply(color.alpha(), amount), color.red(), color.green(), color.blue());
-					break;
-				default:
-					continue;
+				keyframeColor = (IColor)TextColor.fromRgb(modifiers.apply(keyframeColor.getValue()));
 			}
+			modified.add(new DynamicColor.Keyframe(keyframeColor, keyframe.duration()));
 		}
-		return color;
+		return new DynamicColor(color, modified);
 	}
 
 	/**
 	 * Parses an arbitrary object to determine the intended text color.  Valid object types are strings, integral numbers, and lists.
 	 * Useful in configuration files where colors are being specified.
-	 * Valid string formats: "0xAARRGGBB", "0xRRGGBB", "#AARRGGBB", "#RRGGBB", "<color name>"
+	 * Valid string formats: "0xAARRGGBB", "0xRRGGBB", "#AARRGGBB", "#RRGGBB", "<decimal color code>", "<color name>"
 	 * 
 	 * To specify a dynamic color, a list of values can be specified with the following formats:
 	 * [<duration in seconds>, <one or more color values as above>]
 	 * OR
 	 * "<duration in seconds>_<one or more color values as above separated by underscores>"
 	 * 
+	 * The duration may be followed by colon-separated playback and easing options, such as "10:pingpong:easeinout",
+	 * and each color in an animated color may be followed by "@<duration in seconds>" to set its own duration.
+	 * Colors that only play once start when they are parsed, so they should be restarted with {@link DynamicColor#restart()} when first shown.
+	 * 
 	 * @param value The object representing a color.
 	 * @return The parse color, or null if a color couldn't be parsed.
 	 */
-	@SuppressWarnings("null")
 	public static IColor parseColor(Object value, boolean allowAlpha)
 	{
-		List<Object> unparsedColors = null;
-		List<IColor> colors = Lists.newArrayList();
-		float duration = 10.0f;
-
-		if (value instanceof String string && string.contains("_"))
+		Object normalizedValue = normalizeCacheKey(value);
+		if (normalizedValue == null)
 		{
-			List<String> entries = List.of(string.split("_"));
-			try
-			{
-				duration = Float.parseFloat(entries.get(0));
-				unparsedColors = entries.stream().skip(1).map(s -> (Object)s).toList();
-			}
-			catch (NumberFormatException e)
-			{
-				// The first entry isn't a valid float, so it's malformed.
-				// We'll continue assuming it's a valid color value.
-				unparsedColors = entries.stream().map(s -> (Object)s).toList();
-			}
+			return modifiable(parseColorLenient(value, allowAlpha));
 		}
-		else if (value instanceof List<?> list && !list.isEmpty())
+
+		ParsedColorKey key = new ParsedColorKey(normalizedValue, allowAlpha);
+		Optional<IColor> cachedColor = parsedColorCache.getIfPresent(key);
+		if (cachedColor != null)
 		{
-			List<Object> entries = null;
-			try
-			{
-				entries = Collections.unmodifiableList(list);
-				if (entries.get(0) instanceof String string)
-				{
-					duration = Float.parseFloat((String)entries.get(0));
-				}
-				else if (entries.get(0) instanceof Number number)
-				{
-					duration = number.floatValue();
-				}
-				
-				unparsedColors = entries.subList(1, entries.size());
-			}
-			catch (NumberFormatException e)
-			{
-				// The first entry isn't a valid float, so it's malformed.
-				// We'll continue assuming it's a valid color value.
-				unparsedColors = entries;
-			}
-			catch (ClassCastException e)
-			{
-				// The list cannot be cast to a list of objects for some reason.
-				// Do nothing.
-			}
+			return modifiable(cachedColor.orElse(null));
 		}
-		else
+
+		// Colors that only play once each need their own start time, so they aren't cached.
+		IColor result = parseColorLenient(value, allowAlpha);
+		if (!(result instanceof DynamicColor dynamicColor && dynamicColor.getMode() == DynamicColor.Mode.ONCE))
 		{
-			unparsedColors = Lists.newArrayList();
-			unparsedColors.add(value);
+			parsedColorCache.put(key, Optional.ofNullable(result));
 		}
+		return modifiable(result);
+	}
+
+	/**
+	 * Animated colors are parsed into shared instances, so callers get their own copy that they are free to modify.
+	 */
+	private static IColor modifiable(IColor color)
+	{
+		return color instanceof DynamicColor dynamicColor && dynamicColor.isShared() ? dynamicColor.copy() : color;
+	}
 
-		// Didn't find any valid colors, so bail.
-		if (unparsedColors == null || unparsedColors.isEmpty())
+	private static IColor parseColorLenient(Object value, boolean allowAlpha)
+	{
+		try
+		{
+			return parseColor(value, allowAlpha, false);
+		}
+		catch (ColorParseException e)
 		{
 			return null;
 		}
+	}
 
-		for (Object unparsedValue : unparsedColors)
+	/**
+	 * Returns an immutable key for the given color value, or null if it can't be cached.
+	 * Numbers are only ever read as integers outside of lists, so equivalent numbers share a key.
+	 */
+	private static Object normalizeCacheKey(Object value)
+	{
+		if (value instanceof String)
 		{
-			if (unparsedValue == null)
-			{
-				return null;
-			}
-
-			boolean isTransparent = false;
-			TextColor color = null;
-			List<String> modifiers = List.of();
-			if (unparsedValue instanceof String string)
+			return value;
+		}
+		else if (value instanceof Number number)
+		{
+			return number.intValue();
+		}
+		else if (value instanceof List<?> list)
+		{
+			for (Object entry : list)
 			{
-				// First parse modifiers.
-				string = string.replace("~", "").replace("-", "~-").replace("+", "~+");
-				if (string.contains("~"))
+				if (!(entry instanceof String) && !(entry instanceof Number))
 				{
-					modifiers = Lists.newArrayList(string.split("~"));
-					if (modifiers.size() > 1)
-					{
-						string = modifiers.remove(0);
-					}
-				}
-
-				// Parse string color.  First check for color codes.
-				if (isValidColorCode(string))
-				{
-					boolean isHex = string.startsWith("0x") || string.startsWith("#");
-					String colorString = string.toLowerCase().replace("0x", "").replace("#", "");
-					
-					// Double shorthand codes if needed.
-					if (isHex && colorString.length() == 3 || colorString.length() == 4)
-					{
-						colorString = colorString.replaceAll(".", "$0$0");
-					}
-					color = TextColor.parseColor("#" + colorString);
-				}
-				// This wasn't a color code, so try Minecraft colors and then web colors.
-				else
-				{
-					// Transparent is a special case.
-					if (string.toLowerCase().contentEquals("transparent"))
-					{
-						isTransparent = true;
-						color = TextColor.fromRgb(0);
-					}
-					// Check if this is a standard minecraft color and if not, a web color.
-					else
-					{
-						color = MinecraftColors.getColor(string);
-
-						if (color == null)
-						{
-							color = (TextColor)WebColors.getColor(string);
-						}
-					}
+					return null;
 				}
 			}
-			else if (unparsedValue instanceof Number number)
-			{
-				color = TextColor.fromRgb(number.intValue());
-			}
-
-			// If alpha is 0 but the color isn't 0x00000000, assume alpha is intended to be 0xFF.
-			// Only downside is if users want black borders they'd have to specify "0xFF000000".
-			if (color != null && !isTransparent && color.getValue() > 0 && color.getValue() <= 0xFFFFFF)
-			{
-				color = TextColor.fromRgb(color.getValue() | (0xFF << 24));
-			}
-
-			if (color != null)
-			{
-				color = applyModifiers(modifiers, color);
-			}
-
-			// If alpha is disallowed, always force it to 0xFF.
-			if (!allowAlpha && color.getValue() > 0xFFFFFF)
-			{
-				color = TextColor.fromRgb(color.getValue() | (0xFF << 24));
-			}
-
-			if (color != null)
-			{
-				colors.add((IColor)color);
-			}
+			return List.copyOf(list);
 		}
+		return null;
+	}
 
-		if (colors.size() == 1)
-		{
-			return colors.get(0);
-		}
-		else if (colors.size() > 1)
-		{
-			return new DynamicColor(colors, duration);
-		}
+	/**
+	 * Returns the fraction of {@link #parseColor(Object, boolean)} calls that were answered from the cache of parsed colors.
+	 */
+	public static double getParseCacheHitRate()
+	{
+		return parsedColorCache.stats().hitRate();
+	}
 
-		return null;
+	public static void clearParseCache()
+	{
+		parsedColorCache.invalidateAll();
 	}
 
 	public static IColor parseColor(Object value)
@@ -320,81 +232,73 @@ public class ConfigHelper
 		return parseColor(value, true);
 	}
 
-	public static boolean validateColor(Object value)
+	/**
+	 * Parses a color the same way as {@link #parseColor(Object, boolean)}, but reports any problem instead of skipping invalid parts of the color.
+	 * @param value The object representing a color.
+	 * @return The parsed color.
+	 * @throws ColorParseException If the color isn't valid, with a message describing the problem and its position in the color string.
+	 */
+	public static IColor parseColorOrThrow(Object value, boolean allowAlpha) throws ColorParseException
 	{
-		return parseColor(value) != null;
+		return modifiable(parseColor(value, allowAlpha, true));
 	}
 
-	private static boolean isValidColorCode(Object value)
+	private static IColor parseColor(Object value, boolean allowAlpha, boolean strict)
 	{
-		// Null values are always invalid.
-		if (value == null)
-		{
-			return false;
-		}
+		ColorParser parser = new ColorParser(allowAlpha, strict);
+		addColorValue(parser, value);
+		return parser.finish();
+	}
 
+	private static void addColorValue(ColorParser parser, Object value)
+	{
 		if (value instanceof String string)
 		{
-			// Empty strings aren't valid.
-			if (string.isEmpty())
-			{
-				return false;
-			}
-
-			boolean isHex = false;
-			if (string.startsWith("0x") || string.startsWith("#"))
-			{
-				isHex = true;
-				string = string.replace("0x", "").replace("#", "");
-			}
-
-			if (isHex)
+			parser.addString(string);
+		}
+		else if (value instanceof List<?> list && !list.isEmpty())
+		{
+			// The first entry is the duration and options, but if it isn't valid it's malformed.
+			// We'll continue assuming it's a valid color value.
+			List<?> entries = list.subList(1, list.size());
+			if (list.get(0) instanceof String string)
 			{
-				// Ensure this is a valid hex number.
-				try
+				ColorParser.AnimationHeader header = ColorParser.parseHeader(string, 0, string.length());
+				if (header != null)
 				{
-					Long number = Long.parseUnsignedLong(string, 16);
-					if (Long.compareUnsigned(number, 0) < 0 || Long.compareUnsigned(number, 0xFFFFFFFF) > 0)
-					{
-						return false;
-					}
+					parser.setHeader(header);
 				}
-				catch (NumberFormatException e)
+				else
 				{
-					return false;
+					entries = list;
 				}
-
-				// Both longform and shorthand hex notations are valid:
-				// #RGB, #ARGB, #RRGGBB, #AARRGGBB
-				// Make sure this string is of the valid length.
-				return (string.length() == 3 || string.length() == 4 || string.length() == 6 || string.length() == 8);
 			}
-			else
+			else if (list.get(0) instanceof Number number)
 			{
-				// Ensure this is a valid decimal number.
-				try
-				{
-					long number = Long.parseUnsignedLong(string);
-					if (Long.compareUnsigned(number, 0) < 0 || Long.compareUnsigned(number, 0xFFFFFFFF) > 0)
-					{
-						return false;
-					}
-				}
-				catch (NumberFormatException e)
-				{
-					return false;
-				}
+				parser.setHeader(new ColorParser.AnimationHeader(number.floatValue(), DynamicColor.Easing.LINEAR, DynamicColor.Mode.LOOP));
+			}
 
-				// Now make sure the length is valid.
-				return string.length() <= 10;
+			for (Object entry : entries)
+			{
+				parser.addValue(entry, entries.size() > 1);
 			}
 		}
-		else if (value instanceof Number number)
+		else
 		{
-			Long colorValue = number.longValue();
-			return Long.compareUnsigned(colorValue, 0) >= 0 && Long.compareUnsigned(colorValue, 0xFFFFFFFF) <= 0;
+			parser.addValue(value, false);
 		}
-		return false;
+	}
+
+	/**
+	 * Checks if an object is a valid color, without creating any colors.
+	 * @param value The object representing a color.
+	 * @return True if {@link #parseColor(Object)} would return a color for this object.
+	 */
+	public static boolean validateColor(Object value)
+	{
+		ColorParser parser = ColorParser.validator();
+		addColorValue(parser, value);
+		return parser.isValid();
 	}
 
 	static String formatColorName(String input)
@@ -403,4 +307,41 @@ public class ConfigHelper
 		// "Dark Blue" -> "darkblue", "DARK_BLUE" -> "darkblue"
 		return input.toLowerCase().replace(" ", "").replace("_", "");
 	}
+
+	/**
+	 * Checks if a formatted color name is in a sorted array of names, without creating a string for it.
+	 */
+	static boolean containsColorName(String[] sortedNames, char[] name, int length)
+	{
+		int low = 0;
+		int high = sortedNames.length - 1;
+		while (low <= high)
+		{
+			int middle = (low + high) >>> 1;
+			String candidate = sortedNames[middle];
+			int comparison = 0;
+			for (int i = 0; i < Math.min(candidate.length(), length) && comparison == 0; i++)
+			{
+				comparison = candidate.charAt(i) - name[i];
+			}
+			if (comparison == 0)
+			{
+				comparison = candidate.length() - length;
+			}
+
+			if (comparison < 0)
+			{
+				low = middle + 1;
+			}
+			else if (comparison > 0)
+			{
+				high = middle - 1;
+			}
+			else
+			{
+				return true;
+			}
+		}
+		return false;
+	}
 }
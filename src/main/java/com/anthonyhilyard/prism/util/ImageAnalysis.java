@@ -1,22 +1,333 @@
 package com.anthonyhilyard.prism.util;
 
 import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.function.Function;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
 
-import javax.imageio.ImageIO;
+import org.lwjgl.opengl.GL11;
 
-import com.google.common.collect.Maps;
+import com.anthonyhilyard.prism.text.AnimationClock;
+import com.anthonyhilyard.prism.text.DynamicColor;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalListener;
+import com.google.common.hash.Hashing;
+import com.mojang.blaze3d.platform.GlStateManager;
+import com.mojang.blaze3d.platform.NativeImage;
+import com.mojang.blaze3d.systems.RenderSystem;
 
 import net.minecraft.client.Minecraft;
 import net.minecraft.client.renderer.Rect2i;
+import net.minecraft.client.renderer.texture.AbstractTexture;
+import net.minecraft.client.renderer.texture.DynamicTexture;
+import net.minecraft.client.resources.metadata.animation.AnimationMetadataSection;
+import net.minecraft.client.resources.metadata.animation.FrameSize;
 import net.minecraft.network.chat.TextColor;
 import net.minecraft.resources.ResourceLocation;
+import net.minecraft.server.packs.resources.Resource;
 import net.minecraft.server.packs.resources.ResourceManager;
+import net.minecraft.server.packs.resources.SimplePreparableReloadListener;
+import net.minecraft.util.profiling.ProfilerFiller;
+import net.minecraftforge.client.event.RegisterClientReloadListenersEvent;
+import net.minecraftforge.fml.loading.FMLPaths;
 
 public class ImageAnalysis
 {
+	// The number of pixels read from an image at a time.
+	private static final int BAND_PIXELS = 4096;
+
+	// The smallest number of pixels each parallel task will analyze.
+	private static final int TILE_PIXELS = 32768;
+
+	// Images with fewer pixels than this are always analyzed on the calling thread.
+	private static int parallelThreshold = 256 * 256;
+
+	// The number of refinement passes used for palettes when none is given.
+	public static final int DEFAULT_PALETTE_ITERATIONS = 8;
+
+	// The most pixels read by sampled analysis when no limit is given.
+	public static final int DEFAULT_MAX_SAMPLES = 65536;
+
+	private static record RegionKey(ResourceLocation location, int x, int y, int width, int height)
+	{
+		private static RegionKey of(ResourceLocation location, Rect2i region)
+		{
+			return region != null ? new RegionKey(location, region.getX(), region.getY(), region.getWidth(), region.getHeight()) :
+									new RegionKey(location, 0, 0, -1, -1);
+		}
+
+		private Rect2i toRegion()
+		{
+			return width >= 0 ? new Rect2i(x, y, width, height) : null;
+		}
+	}
+
+	/**
+	 * Dominant colors by image and region, including failed lookups so they aren't retried until the next reload.
+	 * Precomputed colors are kept apart from colors found on demand, so they are never evicted.
+	 * Per-frame dominant colors of animated textures and recently loaded images are kept here too, since they also belong to one set of resources.
+	 */
+	private static record ColorCache(Map<RegionKey, Optional<TextColor>> precomputed, Cache<RegionKey, Optional<TextColor>> computed,
+									 Cache<ResourceLocation, Optional<DynamicColor>> animated, Cache<ResourceLocation, ImageData> images)
+	{
+		private ColorCache(Map<RegionKey, Optional<TextColor>> precomputed)
+		{
+			// Only a few images are kept, so several regions of the same image only load and decode it once.
+			this(precomputed, CacheBuilder.newBuilder().maximumSize(4096).build(), CacheBuilder.newBuilder().maximumSize(256).build(),
+				 CacheBuilder.newBuilder().maximumSize(8).removalListener((RemovalListener<ResourceLocation, ImageData>) notification -> notification.getValue().evict()).build());
+		}
+
+		private Optional<TextColor> getIfPresent(RegionKey key)
+		{
+			Optional<TextColor> color = precomputed.get(key);
+			return color != null ? color : computed.getIfPresent(key);
+		}
+
+		private ImageData getImage(ResourceLocation imageLocation) throws ExecutionException
+		{
+			ImageData imageData = images.get(imageLocation, () -> readImage(imageLocation));
+
+			// If this cache was replaced while the image was loading, release the image once it is no longer used since nothing else will.
+			if (colorCache != this)
+			{
+				images.invalidateAll();
+			}
+			return imageData;
+		}
+	}
+
+	// This is replaced as a whole when resources are reloaded, so precomputed colors all become available at once.
+	// Lookups read it only once, so colors and images found from old resources are never added to the new cache.
+	private static volatile ColorCache colorCache = new ColorCache(Map.of());
+
+	// Image regions whose dominant colors are computed in the background whenever resources are reloaded.
+	private static final Map<ResourceLocation, Set<RegionKey>> precomputedRegions = new ConcurrentHashMap<>();
+
+	// Dominant colors from previous sessions, checked against a hash of each image's contents.
+	// It is only created when first used, since the game directory isn't known outside of the game, such as in tests.
+	private static final class PersistentCacheHolder
+	{
+		private static final PersistentColorCache INSTANCE = new PersistentColorCache(FMLPaths.GAMEDIR.get().resolve("prism").resolve("dominant_colors.bin"));
+	}
+
+	/**
+	 * The raw contents of an image resource, along with its hash.  The image is only decoded if it is needed.
+	 * Decoded images use native memory, so they are counted while in use and closed once they are no longer used or cached.
+	 */
+	private static final class ImageData
+	{
+		private final byte[] bytes;
+		private final long hash;
+		private NativeImage image = null;
+		private int users = 0;
+		private boolean evicted = false;
+
+		private ImageData(byte[] bytes)
+		{
+			this.bytes = bytes;
+			this.hash = Hashing.murmur3_128().hashBytes(bytes).asLong();
+		}
+
+		/**
+		 * Returns the decoded image, which must be released with {@link #releaseImage()} once it is no longer needed.
+		 */
+		private synchronized NativeImage acquireImage() throws IOException
+		{
+			if (image == null)
+			{
+				image = NativeImage.read(NativeImage.Format.RGBA, new ByteArrayInputStream(bytes));
+			}
+			users++;
+			return image;
+		}
+
+		private synchronized void releaseImage()
+		{
+			if (--users == 0 && evicted)
+			{
+				closeImage();
+			}
+		}
+
+		private synchronized void evict()
+		{
+			evicted = true;
+			if (users == 0)
+			{
+				closeImage();
+			}
+		}
+
+		private void closeImage()
+		{
+			if (image != null)
+			{
+				image.close();
+				image = null;
+			}
+		}
+	}
+
+	/**
+	 * Builds a histogram of a range of rows, splitting it into smaller tiles to be processed in parallel when it is large.
+	 */
+	private static final class HistogramTask extends RecursiveTask<ColorHistogram>
+	{
+		private final PixelSource source;
+		private final int startY;
+		private final int endY;
+		private final boolean degrade;
+
+		private HistogramTask(PixelSource source, int startY, int endY, boolean degrade)
+		{
+			this.source = source;
+			this.startY = startY;
+			this.endY = endY;
+			this.degrade = degrade;
+		}
+
+		@Override
+		protected ColorHistogram compute()
+		{
+			if (endY - startY <= 1 || (long)(endY - startY) * source.getWidth() <= TILE_PIXELS)
+			{
+				ColorHistogram samples = new ColorHistogram();
+				addRows(source, startY, endY, samples, degrade);
+				return samples;
+			}
+
+			final int middleY = (startY + endY) >>> 1;
+			HistogramTask top = new HistogramTask(source, startY, middleY, degrade);
+			HistogramTask bottom = new HistogramTask(source, middleY, endY, degrade);
+			top.fork();
+			ColorHistogram bottomSamples = bottom.compute();
+			ColorHistogram topSamples = top.join();
+
+			// Merge the smaller histogram into the larger one.
+			if (topSamples.size() < bottomSamples.size())
+			{
+				bottomSamples.addAll(topSamples);
+				return bottomSamples;
+			}
+			topSamples.addAll(bottomSamples);
+			return topSamples;
+		}
+	}
+
+	/**
+	 * Analyzes a range of image regions, splitting it so each region can be analyzed in parallel.
+	 */
+	private static final class RegionsTask extends RecursiveAction
+	{
+		private final PixelSource[] sources;
+		private final int[] colors;
+		private final int start;
+		private final int end;
+
+		private RegionsTask(PixelSource[] sources, int[] colors, int start, int end)
+		{
+			this.sources = sources;
+			this.colors = colors;
+			this.start = start;
+			this.end = end;
+		}
+
+		@Override
+		protected void compute()
+		{
+			if (end - start == 1)
+			{
+				if (sources[start] != null)
+				{
+					colors[start] = getDominantColorValue(sources[start]);
+				}
+				return;
+			}
+
+			final int middle = (start + end) >>> 1;
+			invokeAll(new RegionsTask(sources, colors, start, middle), new RegionsTask(sources, colors, middle, end));
+		}
+	}
+
+	/**
+	 * Analyzes all registered image regions in the background while resources are reloading, then swaps them into the cache.
+	 */
+	private static final class PrecomputeReloadListener extends SimplePreparableReloadListener<Map<RegionKey, Optional<TextColor>>>
+	{
+		@Override
+		protected Map<RegionKey, Optional<TextColor>> prepare(ResourceManager resourceManager, ProfilerFiller profiler)
+		{
+			final Map<RegionKey, Optional<TextColor>> colors = new HashMap<>();
+			for (Map.Entry<ResourceLocation, Set<RegionKey>> entry : precomputedRegions.entrySet())
+			{
+				final ResourceLocation imageLocation = entry.getKey();
+				final RegionKey[] keys = entry.getValue().toArray(RegionKey[]::new);
+				final List<Rect2i> regions = new ArrayList<>(keys.length);
+				final int[] pending = new int[keys.length];
+				final int[] results = new int[keys.length];
+				for (int i = 0; i < keys.length; i++)
+				{
+					regions.add(keys[i].toRegion());
+					pending[i] = i;
+				}
+
+				// Images are read from the resources being loaded, and aren't added to the image cache since it still holds the old resources.
+				try
+				{
+					ImageData imageData = readImage(resourceManager, imageLocation);
+					try
+					{
+						analyzeRegions(imageData, imageLocation, regions, keys, pending, keys.length, results);
+					}
+					finally
+					{
+						imageData.evict();
+					}
+				}
+				catch (Exception e) {}
+
+				for (int i = 0; i < keys.length; i++)
+				{
+					colors.put(keys[i], results[i] != 0 ? Optional.of(TextColor.fromRgb(results[i])) : Optional.empty());
+				}
+			}
+
+			// Save colors found since the last reload while still in the background, instead of writing to disk on the render thread.
+			PersistentCacheHolder.INSTANCE.save();
+			return colors;
+		}
+
+		@Override
+		protected void apply(Map<RegionKey, Optional<TextColor>> colors, ResourceManager resourceManager, ProfilerFiller profiler)
+		{
+			replaceCache(new ColorCache(Map.copyOf(colors)));
+		}
+	}
+
+	/**
+	 * Sets the number of pixels an image must have before it is analyzed in parallel.
+	 * Parallel analysis always gives the same result as analyzing on a single thread.
+	 * @param pixels The minimum number of pixels, or {@link Integer#MAX_VALUE} to never analyze in parallel.
+	 */
+	public static void setParallelThreshold(int pixels)
+	{
+		parallelThreshold = Math.max(pixels, 0);
+	}
+
 	/**
 	 * Returns the dominant color from the given image.
 	 * @param imageLocation The resource location of the image.
@@ -25,101 +336,607 @@ public class ImageAnalysis
 	 */
 	public static TextColor getDominantColor(ResourceLocation imageLocation, Rect2i region)
 	{
-		// First, load the resource and make sure it's a valid image.
-		Minecraft minecraft = Minecraft.getInstance();
-		ResourceManager resourceManager = minecraft.getResourceManager();
-		try (InputStream imageStream = resourceManager.open(imageLocation))
+		final ColorCache cache = colorCache;
+		Optional<TextColor> cachedColor = cache.getIfPresent(RegionKey.of(imageLocation, region));
+		if (cachedColor != null)
 		{
-			BufferedImage image = ImageIO.read(imageStream);
-			
-			if (region != null)
-			{
-				image = image.getSubimage(region.getX(), region.getY(), region.getWidth(), region.getHeight());
-			}
-			return getDominantColor(image);
+			return cachedColor.orElse(null);
 		}
-		catch (Exception e) {}
-		return null;
+
+		int color = getDominantColors(cache, imageLocation, Collections.singletonList(region))[0];
+		return color != 0 ? TextColor.fromRgb(color) : null;
 	}
 
 	/**
-	 * Returns the dominant color from the given image.
-	 * @param image The image as a BufferedImage instance.
-	 * @return The TextColor representation of the most dominant color in the image, or null if an error occurred.
+	 * Returns the dominant colors from many regions of the same image, such as sprites in an atlas.
+	 * The image is only loaded and decoded once, and the regions are analyzed in parallel when there are many pixels to analyze.
+	 * @param imageLocation The resource location of the image.
+	 * @param regions The regions of the image to use.  A null region uses the whole image.
+	 * @return The ARGB dominant color of each region, in the same order as the regions, or 0 for regions where an error occurred.
 	 */
-	public static TextColor getDominantColor(BufferedImage image)
+	public static int[] getDominantColors(ResourceLocation imageLocation, List<Rect2i> regions)
+	{
+		return getDominantColors(colorCache, imageLocation, regions);
+	}
+
+	private static int[] getDominantColors(ColorCache cache, ResourceLocation imageLocation, List<Rect2i> regions)
 	{
-		record ImageSampleData(float weight, int count) {};
-		final Map<Integer, ImageSampleData> samples = Maps.newHashMap();
-		Function<Integer, Float> getWeight = color ->
+		final int[] results = new int[regions.size()];
+		final RegionKey[] keys = new RegionKey[regions.size()];
+		final int[] pending = new int[regions.size()];
+		int pendingCount = 0;
+
+		for (int i = 0; i < results.length; i++)
 		{
-			float a = ((color >> 24) & 0xFF) / 255.0f;
-			float r = ((color >> 16) & 0xFF) / 255.0f;
-			float g = ((color >>  8) & 0xFF) / 255.0f;
-			float b = ((color >>  0) & 0xFF) / 255.0f;
+			keys[i] = RegionKey.of(imageLocation, regions.get(i));
+			Optional<TextColor> cachedColor = cache.getIfPresent(keys[i]);
+			if (cachedColor != null)
+			{
+				results[i] = cachedColor.isPresent() ? cachedColor.get().getValue() : 0;
+			}
+			else
+			{
+				pending[pendingCount++] = i;
+			}
+		}
 
-			// Ignore black and low-alpha colors.
-			if ((r <= 0.06f && g <= 0.06f && b <= 0.06f) || a < 0.3f)
+		if (pendingCount > 0)
+		{
+			try
 			{
-				return 0.0f;
+				// Load the image, reusing it if it was recently used for other regions.
+				analyzeRegions(cache.getImage(imageLocation), imageLocation, regions, keys, pending, pendingCount, results);
 			}
+			catch (Exception e) {}
 
-			// Prioritize bright and opaque colors.
-			return (1.0f - ((1.0f - a) * (1.0f - a)) +
-					1.0f - ((1.0f - r) * (1.0f - r)) +
-					1.0f - ((1.0f - g) * (1.0f - g)) +
-					1.0f - ((1.0f - r) * (1.0f - r)) +
-					1.0f - ((1.0f - g) * (1.0f - g)) +
-					1.0f - ((1.0f - b) * (1.0f - b)) +
-					1.0f - ((1.0f - b) * (1.0f - b))) / 7.0f;
-		};
+			for (int i = 0; i < pendingCount; i++)
+			{
+				int color = results[pending[i]];
+				cache.computed().put(keys[pending[i]], color != 0 ? Optional.of(TextColor.fromRgb(color)) : Optional.empty());
+			}
+		}
+		return results;
+	}
 
-		// Loop over every pixel, calculating the "weight" of that color, and adding
-		// it to our sample map.
-		for (int y = 0; y < image.getHeight(); y++)
+	private static void analyzeRegions(ImageData imageData, ResourceLocation imageLocation, List<Rect2i> regions, RegionKey[] keys, int[] pending, int pendingCount, int[] results)
+	{
+		try
 		{
-			for (int x = 0; x < image.getWidth(); x++)
+			NativeImage image = null;
+			final PixelSource[] sources = new PixelSource[pendingCount];
+			final PersistentColorCache.Key[] persistentKeys = new PersistentColorCache.Key[pendingCount];
+
+			try
 			{
-				// Also degrade the pixel color to group similar colors.
-				for (int degrade = 0; degrade < 8; degrade += 2)
+				for (int i = 0; i < pendingCount; i++)
 				{
-					int color = image.getRGB(x, y);
-					int degradedColor = ColorUtil.combineARGB(((color >> 24) & 0xFF) >> degrade,
-															  ((color >> 16) & 0xFF) >> degrade,
-															  ((color >>  8) & 0xFF) >> degrade,
-															  ((color >>  0) & 0xFF) >> degrade);
+					final int index = pending[i];
+					final RegionKey key = keys[index];
+
+					// If this region was analyzed in a previous session and the image hasn't changed since, there's no need to analyze it again.
+					persistentKeys[i] = new PersistentColorCache.Key(imageLocation.toString(), key.x(), key.y(), key.width(), key.height());
+					PersistentColorCache.Entry storedColor = PersistentCacheHolder.INSTANCE.get(persistentKeys[i], imageData.hash);
+					if (storedColor != null)
+					{
+						results[index] = storedColor.isPresent() ? storedColor.getColor() : 0;
+						continue;
+					}
 
-					if (!samples.containsKey(degradedColor))
+					// Only decode the image once one of the regions actually needs it.
+					if (image == null)
 					{
-						float weight = getWeight.apply(degradedColor);
-						if (weight == 0)
-						{
-							continue;
-						}
-						ImageSampleData data = new ImageSampleData(weight, 1);
-
-						samples.put(degradedColor, data);
+						image = imageData.acquireImage();
 					}
-					else
+					sources[i] = getRegionSource(image, regions.get(index));
+				}
+
+				final int[] colors = analyzeSources(sources);
+				for (int i = 0; i < pendingCount; i++)
+				{
+					if (sources[i] != null)
 					{
-						samples.replace(degradedColor, new ImageSampleData(samples.get(degradedColor).weight(), samples.get(degradedColor).count() + 1));
+						results[pending[i]] = colors[i];
+						PersistentCacheHolder.INSTANCE.put(persistentKeys[i], imageData.hash, colors[i] != 0 ? colors[i] : null);
 					}
 				}
 			}
+			finally
+			{
+				if (image != null)
+				{
+					imageData.releaseImage();
+				}
+			}
+		}
+		catch (Exception e) {}
+	}
+
+	/**
+	 * Returns the dominant colors from regions of a texture that has already been loaded by the texture manager, such as a texture atlas.
+	 * Dynamic textures are read from their pixels in memory, and other textures are downloaded from the GPU on the render thread.
+	 * Unlike image resources, the results are not cached, since loaded textures can change at any time.
+	 * @param textureLocation The location the texture was registered with.
+	 * @param regions The regions of the texture to use.  A null region uses the whole texture.
+	 * @return The ARGB dominant color of each region, in the same order as the regions, or 0 for regions where an error occurred.
+	 */
+	public static int[] getLoadedTextureColors(ResourceLocation textureLocation, List<Rect2i> regions)
+	{
+		final int[] results = new int[regions.size()];
+
+		// Texture contents can only be read on the render thread, but the analysis can be done on this thread.
+		NativeImage image = RenderSystem.isOnRenderThread() ? readLoadedTexture(textureLocation) :
+							Minecraft.getInstance().submit(() -> readLoadedTexture(textureLocation)).join();
+		if (image == null)
+		{
+			return results;
+		}
+
+		try (image)
+		{
+			final PixelSource[] sources = new PixelSource[regions.size()];
+			for (int i = 0; i < sources.length; i++)
+			{
+				sources[i] = getRegionSource(image, regions.get(i));
+			}
+			return analyzeSources(sources);
 		}
+	}
 
-		final Map<Integer, Float> groups = Maps.newHashMap();
-		// Now iterate over the sample map and determine the most dominant color.
-		for (Integer color : samples.keySet())
+	/**
+	 * Returns the dominant color from the given image.
+	 * @param image The image as a NativeImage instance, which must be in RGBA format.
+	 * @param region The region of the image to use, or null for the whole image.
+	 * @return The TextColor representation of the most dominant color in the image, or null if an error occurred.
+	 */
+	public static TextColor getDominantColor(NativeImage image, Rect2i region)
+	{
+		PixelSource source = getRegionSource(image, region);
+		return source != null ? getDominantColor(source) : null;
+	}
+
+	/**
+	 * Returns the dominant color from the given image, only analyzing a fraction of its pixels, and at most {@link #DEFAULT_MAX_SAMPLES}.
+	 * The result matches a full analysis in most cases where one color clearly dominates, so this is best suited to large images.
+	 * @param image The image as a NativeImage instance, which must be in RGBA format.
+	 * @param region The region of the image to use, or null for the whole image.
+	 * @param sampleFraction The fraction of pixels to analyze, between 0 and 1.  A value of 1 analyzes every pixel.
+	 * @return The TextColor representation of the most dominant color in the sampled pixels, or null if an error occurred.
+	 */
+	public static TextColor getDominantColor(NativeImage image, Rect2i region, float sampleFraction)
+	{
+		return getDominantColor(image, region, sampleFraction, DEFAULT_MAX_SAMPLES);
+	}
+
+	/**
+	 * Returns the dominant color from the given image, only analyzing a fraction of its pixels.
+	 * Since the time taken grows with the number of pixels analyzed, a limit keeps very large images from taking longer than smaller ones.
+	 * @param image The image as a NativeImage instance, which must be in RGBA format.
+	 * @param region The region of the image to use, or null for the whole image.
+	 * @param sampleFraction The fraction of pixels to analyze, between 0 and 1.  A value of 1 analyzes every pixel.
+	 * @param maxSamples The most pixels to analyze, which lowers the fraction for large images, or 0 for no limit.
+	 * @return The TextColor representation of the most dominant color in the sampled pixels, or null if an error occurred.
+	 */
+	public static TextColor getDominantColor(NativeImage image, Rect2i region, float sampleFraction, int maxSamples)
+	{
+		PixelSource source = getRegionSource(image, region);
+		return source != null ? getDominantColor(PixelSource.sampled(source, sampleFraction, maxSamples)) : null;
+	}
+
+	/**
+	 * Returns the dominant color of each frame of an animated texture, as a color that animates along with the texture.
+	 * Frames are analyzed one at a time with a single reused histogram, and frames shown more than once are only analyzed once.
+	 * @param imageLocation The resource location of the texture, which may have animation metadata in a .mcmeta file.
+	 * @return A DynamicColor with a keyframe for each frame of the animation, a static color if the texture isn't animated,
+	 *         or null if an error occurred.
+	 */
+	public static DynamicColor getAnimatedDominantColor(ResourceLocation imageLocation)
+	{
+		final ColorCache cache = colorCache;
+		Optional<DynamicColor> cachedColor = cache.animated().getIfPresent(imageLocation);
+		if (cachedColor != null)
 		{
-			groups.put(color, samples.get(color).count() * samples.get(color).weight());
+			return cachedColor.map(DynamicColor::copy).orElse(null);
 		}
 
-		if (groups.isEmpty())
+		DynamicColor result = null;
+		try
+		{
+			Resource resource = Minecraft.getInstance().getResourceManager().getResource(imageLocation).orElse(null);
+			AnimationMetadataSection animation = resource != null ? resource.metadata().getSection(AnimationMetadataSection.SERIALIZER).orElse(null) : null;
+			if (animation == null)
+			{
+				int color = getDominantColors(cache, imageLocation, Collections.singletonList(null))[0];
+				result = color != 0 ? DynamicColor.fromRgb(color) : null;
+			}
+			else
+			{
+				ImageData imageData = cache.getImage(imageLocation);
+				NativeImage image = imageData.acquireImage();
+				try
+				{
+					result = getAnimatedDominantColor(image, animation);
+				}
+				finally
+				{
+					imageData.releaseImage();
+				}
+			}
+		}
+		catch (Exception e) {}
+
+		cache.animated().put(imageLocation, Optional.ofNullable(result));
+		return result != null ? result.copy() : null;
+	}
+
+	private static DynamicColor getAnimatedDominantColor(NativeImage image, AnimationMetadataSection animation)
+	{
+		final FrameSize frameSize = animation.calculateFrameSize(image.getWidth(), image.getHeight());
+		final int frameWidth = frameSize.width();
+		final int frameHeight = frameSize.height();
+		if (frameWidth <= 0 || frameHeight <= 0)
+		{
+			return null;
+		}
+
+		// Frames are laid out left to right, then top to bottom, the same as when the texture is loaded.
+		final int columns = image.getWidth() / frameWidth;
+		final int frameCount = columns * (image.getHeight() / frameHeight);
+		if (frameCount == 0)
+		{
+			return null;
+		}
+
+		// Use the frames listed in the metadata, or every frame in order if none are listed.
+		final List<int[]> frames = new ArrayList<>();
+		animation.forEachFrame((index, time) ->
+		{
+			if (index >= 0 && index < frameCount)
+			{
+				frames.add(new int[] { index, time });
+			}
+		});
+		if (frames.isEmpty())
+		{
+			for (int index = 0; index < frameCount; index++)
+			{
+				frames.add(new int[] { index, animation.getDefaultFrameTime() });
+			}
+		}
+
+		final int[] frameColors = new int[frameCount];
+		final boolean[] analyzed = new boolean[frameCount];
+		final ColorHistogram samples = new ColorHistogram();
+		final int[] buffer = new int[Math.max(BAND_PIXELS, frameWidth)];
+		int firstColor = 0;
+
+		for (int[] frame : frames)
+		{
+			final int index = frame[0];
+			if (!analyzed[index])
+			{
+				samples.clear();
+				addRows(PixelSource.of(image, (index % columns) * frameWidth, (index / columns) * frameHeight, frameWidth, frameHeight), 0, frameHeight, samples, true, buffer);
+				Integer color = samples.getDominantColor();
+				frameColors[index] = color != null ? color : 0;
+				analyzed[index] = true;
+			}
+			if (firstColor == 0)
+			{
+				firstColor = frameColors[index];
+			}
+		}
+
+		if (firstColor == 0)
+		{
+			return null;
+		}
+
+		// Frames without a dominant color keep the color of the frame before them.
+		final List<DynamicColor.Keyframe> keyframes = new ArrayList<>(frames.size());
+		int previousColor = firstColor;
+		for (int[] frame : frames)
+		{
+			int color = frameColors[frame[0]] != 0 ? frameColors[frame[0]] : previousColor;
+			keyframes.add(new DynamicColor.Keyframe(DynamicColor.fromRgb(color), AnimationClock.ticksToTime(frame[1])));
+			previousColor = color;
+		}
+
+		return new DynamicColor(keyframes, animation.isInterpolatedFrames() ? DynamicColor.Easing.LINEAR : DynamicColor.Easing.STEP, DynamicColor.Mode.LOOP);
+	}
+
+	/**
+	 * Returns the most representative colors from the given image, sorted from most to least significant.
+	 * Colors are weighed the same way as for {@link #getDominantColor(ResourceLocation, Rect2i)}, so black and transparent colors are ignored.
+	 * The results are always the same for the same image, and can be used to create a {@link DynamicColor} with {@link DynamicColor#fromPalette}.
+	 * @param imageLocation The resource location of the image.
+	 * @param region The region of the image to use, or null for the whole image.
+	 * @param count The maximum number of colors to return.
+	 * @param maxIterations The maximum number of refinement passes, which bounds the time taken for images with many colors.
+	 * @return The ARGB colors of the palette, which may have fewer than the requested number of colors, or an empty array if an error occurred.
+	 */
+	public static int[] getPalette(ResourceLocation imageLocation, Rect2i region, int count, int maxIterations)
+	{
+		try
+		{
+			ImageData imageData = colorCache.getImage(imageLocation);
+			NativeImage image = imageData.acquireImage();
+			try
+			{
+				return getPalette(image, region, count, maxIterations);
+			}
+			finally
+			{
+				imageData.releaseImage();
+			}
+		}
+		catch (Exception e)
+		{
+			return new int[0];
+		}
+	}
+
+	public static int[] getPalette(ResourceLocation imageLocation, Rect2i region, int count)
+	{
+		return getPalette(imageLocation, region, count, DEFAULT_PALETTE_ITERATIONS);
+	}
+
+	/**
+	 * Returns the most representative colors from the given image, sorted from most to least significant.
+	 * @param image The image as a NativeImage instance, which must be in RGBA format.
+	 * @param region The region of the image to use, or null for the whole image.
+	 * @param count The maximum number of colors to return.
+	 * @param maxIterations The maximum number of refinement passes, which bounds the time taken for images with many colors.
+	 * @return The ARGB colors of the palette, which may have fewer than the requested number of colors, or an empty array if an error occurred.
+	 */
+	public static int[] getPalette(NativeImage image, Rect2i region, int count, int maxIterations)
+	{
+		PixelSource source = getRegionSource(image, region);
+		if (source == null)
+		{
+			return new int[0];
+		}
+		return ColorQuantizer.quantize(buildHistogram(source, false), count, Math.max(maxIterations, 0));
+	}
+
+	/**
+	 * Returns a copy of the given loaded texture's contents, or null if it isn't loaded.  Must be called on the render thread.
+	 */
+	private static NativeImage readLoadedTexture(ResourceLocation textureLocation)
+	{
+		AbstractTexture texture = Minecraft.getInstance().getTextureManager().getTexture(textureLocation, null);
+		if (texture == null)
 		{
 			return null;
 		}
 
-		return TextColor.fromRgb(groups.entrySet().stream().max((a, b) -> Float.compare(a.getValue(), b.getValue())).get().getKey());
+		if (texture instanceof DynamicTexture dynamicTexture && dynamicTexture.getPixels() != null)
+		{
+			NativeImage pixels = dynamicTexture.getPixels();
+			NativeImage image = new NativeImage(pixels.getWidth(), pixels.getHeight(), false);
+			image.copyFrom(pixels);
+			return image;
+		}
+
+		texture.bind();
+		int width = GlStateManager._getTexLevelParameter(GL11.GL_TEXTURE_2D, 0, GL11.GL_TEXTURE_WIDTH);
+		int height = GlStateManager._getTexLevelParameter(GL11.GL_TEXTURE_2D, 0, GL11.GL_TEXTURE_HEIGHT);
+		if (width <= 0 || height <= 0)
+		{
+			return null;
+		}
+
+		NativeImage image = new NativeImage(width, height, false);
+		image.downloadTexture(0, false);
+		return image;
+	}
+
+	/**
+	 * Returns a pixel source for a region of the given image, or null if the region is invalid.
+	 */
+	private static PixelSource getRegionSource(NativeImage image, Rect2i region)
+	{
+		try
+		{
+			return region != null ? PixelSource.of(image, region.getX(), region.getY(), region.getWidth(), region.getHeight()) :
+									PixelSource.of(image, 0, 0, image.getWidth(), image.getHeight());
+		}
+		catch (IllegalArgumentException e)
+		{
+			return null;
+		}
+	}
+
+	/**
+	 * Returns the dominant color of each of the given pixel sources, or 0 for any that are null.
+	 */
+	private static int[] analyzeSources(PixelSource[] sources)
+	{
+		final int[] colors = new int[sources.length];
+		long totalPixels = 0;
+		int sourceCount = 0;
+		for (PixelSource source : sources)
+		{
+			if (source != null)
+			{
+				totalPixels += (long)source.getWidth() * source.getHeight();
+				sourceCount++;
+			}
+		}
+
+		if (sourceCount > 1 && totalPixels >= parallelThreshold && ForkJoinPool.getCommonPoolParallelism() > 1)
+		{
+			ForkJoinPool.commonPool().invoke(new RegionsTask(sources, colors, 0, sources.length));
+		}
+		else
+		{
+			for (int i = 0; i < sources.length; i++)
+			{
+				if (sources[i] != null)
+				{
+					colors[i] = getDominantColorValue(sources[i]);
+				}
+			}
+		}
+		return colors;
+	}
+
+	/**
+	 * Clears all cached dominant colors and images.  This is done automatically when resources are reloaded.
+	 * Colors saved to disk are kept, since they are only used for images that haven't changed.
+	 */
+	public static void clearCache()
+	{
+		replaceCache(new ColorCache(Map.of()));
+	}
+
+	private static void replaceCache(ColorCache cache)
+	{
+		// Images in the old cache are released once they are no longer in use.
+		ColorCache oldCache = colorCache;
+		colorCache = cache;
+		oldCache.images().invalidateAll();
+	}
+
+	/**
+	 * Registers a region of an image whose dominant color should be computed in the background whenever resources are reloaded,
+	 * so it is ready before it is first needed.  Regions should be registered during mod construction, before resources are first loaded.
+	 * @param imageLocation The resource location of the image.
+	 * @param region The region of the image to use, or null for the whole image.
+	 */
+	public static void registerPrecomputedColor(ResourceLocation imageLocation, Rect2i region)
+	{
+		precomputedRegions.computeIfAbsent(imageLocation, location -> ConcurrentHashMap.newKeySet()).add(RegionKey.of(imageLocation, region));
+	}
+
+	public static void onRegisterReloadListeners(RegisterClientReloadListenersEvent event)
+	{
+		event.registerReloadListener(new PrecomputeReloadListener());
+	}
+
+	private static ImageData readImage(ResourceLocation imageLocation) throws IOException
+	{
+		return readImage(Minecraft.getInstance().getResourceManager(), imageLocation);
+	}
+
+	private static ImageData readImage(ResourceManager resourceManager, ResourceLocation imageLocation) throws IOException
+	{
+		// Load the raw resource contents, which are only decoded if needed.
+		try (InputStream imageStream = resourceManager.open(imageLocation))
+		{
+			return new ImageData(imageStream.readAllBytes());
+		}
+	}
+
+	/**
+	 * Returns the dominant color from the given image.
+	 * @param image The image as a BufferedImage instance.
+	 * @return The TextColor representation of the most dominant color in the image, or null if an error occurred.
+	 */
+	public static TextColor getDominantColor(BufferedImage image)
+	{
+		return getDominantColor(PixelSource.of(image));
+	}
+
+	/**
+	 * Returns the dominant color from the given image, only analyzing a fraction of its pixels, and at most {@link #DEFAULT_MAX_SAMPLES}.
+	 * @param image The image as a BufferedImage instance.
+	 * @param sampleFraction The fraction of pixels to analyze, between 0 and 1.  A value of 1 analyzes every pixel.
+	 * @return The TextColor representation of the most dominant color in the sampled pixels, or null if an error occurred.
+	 */
+	public static TextColor getDominantColor(BufferedImage image, float sampleFraction)
+	{
+		return getDominantColor(image, sampleFraction, DEFAULT_MAX_SAMPLES);
+	}
+
+	/**
+	 * Returns the dominant color from the given image, only analyzing a fraction of its pixels.
+	 * @param image The image as a BufferedImage instance.
+	 * @param sampleFraction The fraction of pixels to analyze, between 0 and 1.  A value of 1 analyzes every pixel.
+	 * @param maxSamples The most pixels to analyze, which lowers the fraction for large images, or 0 for no limit.
+	 * @return The TextColor representation of the most dominant color in the sampled pixels, or null if an error occurred.
+	 */
+	public static TextColor getDominantColor(BufferedImage image, float sampleFraction, int maxSamples)
+	{
+		return getDominantColor(PixelSource.sampled(PixelSource.of(image), sampleFraction, maxSamples));
+	}
+
+	private static TextColor getDominantColor(PixelSource source)
+	{
+		int dominantColor = getDominantColorValue(source);
+		return dominantColor != 0 ? TextColor.fromRgb(dominantColor) : null;
+	}
+
+	/**
+	 * Returns the ARGB dominant color of the given pixels, or 0 if there isn't one.
+	 * The dominant color can never be 0 itself, since fully transparent colors are ignored.
+	 */
+	private static int getDominantColorValue(PixelSource source)
+	{
+		final ColorHistogram samples = buildHistogram(source, true);
+
+		// Now determine the most dominant color, weighing each color by how often it appears and how bright and opaque it is.
+		Integer dominantColor = samples.getDominantColor();
+		return dominantColor != null ? dominantColor : 0;
+	}
+
+	/**
+	 * Builds a histogram of every pixel in the source.
+	 * @param degrade Whether to also add degraded versions of each pixel, which groups similar colors together.
+	 */
+	static ColorHistogram buildHistogram(PixelSource source, boolean degrade)
+	{
+		final long pixels = (long)source.getWidth() * source.getHeight();
+		if (pixels >= parallelThreshold && ForkJoinPool.getCommonPoolParallelism() > 1)
+		{
+			return ForkJoinPool.commonPool().invoke(new HistogramTask(source, 0, source.getHeight(), degrade));
+		}
+
+		ColorHistogram samples = new ColorHistogram();
+		addRows(source, 0, source.getHeight(), samples, degrade);
+		return samples;
+	}
+
+	/**
+	 * Adds every pixel in the given rows to the histogram, reading the pixels in bands to avoid per-pixel overhead.
+	 */
+	private static void addRows(PixelSource source, int startY, int endY, ColorHistogram samples, boolean degrade)
+	{
+		final int width = source.getWidth();
+		if (width <= 0)
+		{
+			return;
+		}
+
+		addRows(source, startY, endY, samples, degrade, new int[Math.max(1, Math.min(BAND_PIXELS / width, endY - startY)) * width]);
+	}
+
+	/**
+	 * Adds every pixel in the given rows to the histogram, reading as many rows at a time as fit in the given buffer.
+	 */
+	private static void addRows(PixelSource source, int startY, int endY, ColorHistogram samples, boolean degrade, int[] buffer)
+	{
+		final int width = source.getWidth();
+		if (width <= 0)
+		{
+			return;
+		}
+
+		final int bandRows = Math.max(1, Math.min(buffer.length / width, endY - startY));
+		for (int y = startY; y < endY; y += bandRows)
+		{
+			int rows = Math.min(bandRows, endY - y);
+			source.readRows(y, rows, buffer);
+			if (degrade)
+			{
+				samples.addDegraded(buffer, rows * width);
+			}
+			else
+			{
+				for (int i = 0; i < rows * width; i++)
+				{
+					samples.add(buffer[i]);
+				}
+			}
+		}
 	}
 }
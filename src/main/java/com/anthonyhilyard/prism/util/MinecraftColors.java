@@ -10,6 +10,7 @@ import net.minecraft.network.chat.TextColor;
 public class MinecraftColors
 {
 	private static final Map<String, Integer> minecraftColorMap;
+	private static final String[] sortedNames;
 
 	static
 	{
@@ -25,6 +26,7 @@ public class MinecraftColors
 		}
 
 		minecraftColorMap = Map.copyOf(loadedColors);
+		sortedNames = loadedColors.keySet().stream().sorted().toArray(String[]::new);
 	}
 
 	public static TextColor getColor(String colorName)
@@ -37,4 +39,20 @@ public class MinecraftColors
 		}
 		return result;
 	}
+
+	/**
+	 * Returns the color with the given name, which must already be formatted with {@link ConfigHelper#formatColorName}.
+	 */
+	static Integer getFormattedColor(String formattedName)
+	{
+		return minecraftColorMap.get(formattedName);
+	}
+
+	/**
+	 * Returns true if there is a color with the given name, which must already be formatted with {@link ConfigHelper#formatColorName}.
+	 */
+	static boolean isFormattedColorName(char[] name, int length)
+	{
+		return ConfigHelper.containsColorName(sortedNames, name, length);
+	}
 }
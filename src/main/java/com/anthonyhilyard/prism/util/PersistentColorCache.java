@@ -0,0 +1,199 @@
+package com.anthonyhilyard.prism.util;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.anthonyhilyard.prism.Prism;
+
+/**
+ * Stores the results of image analysis on disk, so textures that haven't changed never need to be analyzed again in later sessions.
+ * Each result is stored along with a hash of the texture's contents, and is ignored if the texture no longer matches.
+ */
+final class PersistentColorCache
+{
+	private static final int MAGIC = 0x5052534D;
+	private static final int VERSION = 1;
+
+	// Once there are more entries than this, entries that weren't used this session are dropped when saving.
+	private static final int MAX_ENTRIES = 65536;
+
+	static record Key(String location, int x, int y, int width, int height) {}
+
+	static final class Entry
+	{
+		private final long hash;
+		private final int color;
+		private final boolean present;
+		private volatile boolean used;
+
+		private Entry(long hash, int color, boolean present, boolean used)
+		{
+			this.hash = hash;
+			this.color = color;
+			this.present = present;
+			this.used = used;
+		}
+
+		/**
+		 * Returns true if the image had a dominant color, or false if analysis found no usable color.
+		 */
+		boolean isPresent() { return present; }
+		int getColor() { return color; }
+	}
+
+	private final Path path;
+	private final Map<Key, Entry> entries = new ConcurrentHashMap<>();
+	private volatile boolean loaded = false;
+	private volatile boolean dirty = false;
+
+	PersistentColorCache(Path path)
+	{
+		this.path = path;
+	}
+
+	/**
+	 * Returns the stored result for the given key, or null if there isn't one for an image with the given contents.
+	 */
+	Entry get(Key key, long hash)
+	{
+		ensureLoaded();
+		Entry entry = entries.get(key);
+		if (entry == null || entry.hash != hash)
+		{
+			return null;
+		}
+		entry.used = true;
+		return entry;
+	}
+
+	void put(Key key, long hash, Integer color)
+	{
+		ensureLoaded();
+		entries.put(key, new Entry(hash, color != null ? color : 0, color != null, true));
+		dirty = true;
+	}
+
+	private void ensureLoaded()
+	{
+		// Only lock until the file has been loaded, since this is checked on every lookup.
+		if (loaded)
+		{
+			return;
+		}
+
+		synchronized (this)
+		{
+			if (!loaded)
+			{
+				load();
+				loaded = true;
+			}
+		}
+	}
+
+	private void load()
+	{
+		// Save any new results when the game closes.
+		Runtime.getRuntime().addShutdownHook(new Thread(this::save, "Prism Color Cache Save"));
+
+		if (!Files.isRegularFile(path))
+		{
+			return;
+		}
+
+		try
+		{
+			// Read the whole file at once and parse it from memory.
+			ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(path));
+			if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION)
+			{
+				return;
+			}
+
+			int count = buffer.getInt();
+			for (int i = 0; i < count; i++)
+			{
+				byte[] locationBytes = new byte[buffer.getShort() & 0xFFFF];
+				buffer.get(locationBytes);
+				Key key = new Key(new String(locationBytes, StandardCharsets.UTF_8), buffer.getInt(), buffer.getInt(), buffer.getInt(), buffer.getInt());
+				long hash = buffer.getLong();
+				int color = buffer.getInt();
+				boolean present = buffer.get() != 0;
+				entries.put(key, new Entry(hash, color, present, false));
+			}
+		}
+		catch (IOException | BufferUnderflowException e)
+		{
+			// A corrupted cache isn't a problem, it will just be rebuilt.
+			Prism.LOGGER.warn("Unable to read image color cache, it will be rebuilt: {}", e.toString());
+			entries.clear();
+		}
+	}
+
+	/**
+	 * Writes all results to disk, if any have changed since the last save.
+	 */
+	synchronized void save()
+	{
+		if (!dirty)
+		{
+			return;
+		}
+		dirty = false;
+
+		final boolean pruneUnused = entries.size() > MAX_ENTRIES;
+		try
+		{
+			Files.createDirectories(path.getParent());
+			Path tempPath = path.resolveSibling(path.getFileName() + ".tmp");
+			try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tempPath))))
+			{
+				output.writeInt(MAGIC);
+				output.writeInt(VERSION);
+
+				// Choose the entries to save up front, since lookups can mark entries as used while this is writing.
+				List<Map.Entry<Key, Entry>> savedEntries = new ArrayList<>(entries.size());
+				for (Map.Entry<Key, Entry> mapEntry : entries.entrySet())
+				{
+					if (!pruneUnused || mapEntry.getValue().used)
+					{
+						savedEntries.add(mapEntry);
+					}
+				}
+				output.writeInt(savedEntries.size());
+
+				for (Map.Entry<Key, Entry> mapEntry : savedEntries)
+				{
+					Key key = mapEntry.getKey();
+					Entry entry = mapEntry.getValue();
+					byte[] locationBytes = key.location().getBytes(StandardCharsets.UTF_8);
+					output.writeShort(locationBytes.length);
+					output.write(locationBytes);
+					output.writeInt(key.x());
+					output.writeInt(key.y());
+					output.writeInt(key.width());
+					output.writeInt(key.height());
+					output.writeLong(entry.hash);
+					output.writeInt(entry.color);
+					output.writeByte(entry.present ? 1 : 0);
+				}
+			}
+			Files.move(tempPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		}
+		catch (IOException e)
+		{
+			Prism.LOGGER.warn("Unable to save image color cache: {}", e.toString());
+		}
+	}
+}
@@ -0,0 +1,264 @@
+package com.anthonyhilyard.prism.util;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.ComponentSampleModel;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.Raster;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.nio.IntBuffer;
+
+import org.lwjgl.system.MemoryUtil;
+
+import com.mojang.blaze3d.platform.NativeImage;
+
+/**
+ * Reads rows of non-premultiplied ARGB pixels from an image.
+ * Implementations only read from the image, so multiple threads can read different rows at once.
+ */
+interface PixelSource
+{
+	int getWidth();
+	int getHeight();
+
+	/**
+	 * Returns a single pixel.  Reading whole rows with {@link #readRows} is faster when every pixel is needed.
+	 */
+	int getPixel(int x, int y);
+
+	/**
+	 * Reads the given rows into the buffer, one after another.
+	 * @param y The first row to read.
+	 * @param rows The number of rows to read.
+	 * @param buffer The buffer to fill, which must hold at least {@code rows * getWidth()} pixels.
+	 */
+	void readRows(int y, int rows, int[] buffer);
+
+	/**
+	 * Returns a pixel source for a region of the given image, which must be in RGBA format.
+	 * Pixels are read directly from the image's native memory, so the image must not be closed while the source is in use.
+	 * @throws IllegalArgumentException If the image isn't in RGBA format, or the region is empty or outside of the image.
+	 */
+	static PixelSource of(NativeImage image, int x, int y, int width, int height)
+	{
+		if (image.format() != NativeImage.Format.RGBA)
+		{
+			throw new IllegalArgumentException("Only RGBA images can be analyzed");
+		}
+		if (x < 0 || y < 0 || width <= 0 || height <= 0 || x + width > image.getWidth() || y + height > image.getHeight())
+		{
+			throw new IllegalArgumentException("Region is outside of the image");
+		}
+
+		// View the image's native memory as ints, so whole rows can be copied at once.
+		final int stride = image.getWidth();
+		final int offset = y * stride + x;
+		final IntBuffer data = MemoryUtil.memIntBuffer(image.pixels, stride * image.getHeight());
+		return new PixelSource()
+		{
+			@Override public int getWidth() { return width; }
+			@Override public int getHeight() { return height; }
+
+			@Override
+			public int getPixel(int pixelX, int pixelY)
+			{
+				return toARGB(data.get(offset + pixelY * stride + pixelX));
+			}
+
+			@Override
+			public void readRows(int startY, int rows, int[] buffer)
+			{
+				for (int row = 0; row < rows; row++)
+				{
+					data.get(offset + (startY + row) * stride, buffer, row * width, width);
+				}
+				for (int i = 0; i < rows * width; i++)
+				{
+					buffer[i] = toARGB(buffer[i]);
+				}
+			}
+		};
+	}
+
+	// Native images store pixels as ABGR, so swap the red and blue channels.
+	private static int toARGB(int pixel)
+	{
+		return (pixel & 0xFF00FF00) | ((pixel >> 16) & 0xFF) | ((pixel & 0xFF) << 16);
+	}
+
+	/**
+	 * Returns a pixel source for the given image.  Common image formats are read directly from their backing data,
+	 * and all others are read in bulk through the image's color model.
+	 */
+	static PixelSource of(BufferedImage image)
+	{
+		final int width = image.getWidth();
+		final int height = image.getHeight();
+		final Raster raster = image.getRaster();
+
+		// Images created with getSubimage share their parent's data, so find where this image starts in it.
+		final int translateX = -raster.getSampleModelTranslateX();
+		final int translateY = -raster.getSampleModelTranslateY();
+
+		if (image.getType() == BufferedImage.TYPE_INT_ARGB &&
+			raster.getDataBuffer() instanceof DataBufferInt dataBuffer &&
+			raster.getSampleModel() instanceof SinglePixelPackedSampleModel sampleModel)
+		{
+			final int[] data = dataBuffer.getData();
+			final int stride = sampleModel.getScanlineStride();
+			final int offset = dataBuffer.getOffset() + translateY * stride + translateX;
+			return new PixelSource()
+			{
+				@Override public int getWidth() { return width; }
+				@Override public int getHeight() { return height; }
+
+				@Override
+				public int getPixel(int x, int y)
+				{
+					return data[offset + y * stride + x];
+				}
+
+				@Override
+				public void readRows(int y, int rows, int[] buffer)
+				{
+					for (int row = 0; row < rows; row++)
+					{
+						System.arraycopy(data, offset + (y + row) * stride, buffer, row * width, width);
+					}
+				}
+			};
+		}
+		else if ((image.getType() == BufferedImage.TYPE_4BYTE_ABGR || image.getType() == BufferedImage.TYPE_3BYTE_BGR) &&
+				 raster.getDataBuffer() instanceof DataBufferByte dataBuffer &&
+				 raster.getSampleModel() instanceof ComponentSampleModel sampleModel)
+		{
+			final byte[] data = dataBuffer.getData();
+			final int stride = sampleModel.getScanlineStride();
+			final int pixelStride = sampleModel.getPixelStride();
+			final int[] bandOffsets = sampleModel.getBandOffsets();
+			final int redOffset = bandOffsets[0], greenOffset = bandOffsets[1], blueOffset = bandOffsets[2];
+			final boolean hasAlpha = bandOffsets.length > 3;
+			final int alphaOffset = hasAlpha ? bandOffsets[3] : 0;
+			final int offset = dataBuffer.getOffset() + translateY * stride + translateX * pixelStride;
+			return new PixelSource()
+			{
+				@Override public int getWidth() { return width; }
+				@Override public int getHeight() { return height; }
+
+				@Override
+				public int getPixel(int x, int y)
+				{
+					int index = offset + y * stride + x * pixelStride;
+					int alpha = hasAlpha ? data[index + alphaOffset] & 0xFF : 0xFF;
+					return (alpha << 24) | ((data[index + redOffset] & 0xFF) << 16) | ((data[index + greenOffset] & 0xFF) << 8) | (data[index + blueOffset] & 0xFF);
+				}
+
+				@Override
+				public void readRows(int y, int rows, int[] buffer)
+				{
+					int i = 0;
+					for (int row = 0; row < rows; row++)
+					{
+						int index = offset + (y + row) * stride;
+						for (int x = 0; x < width; x++, index += pixelStride)
+						{
+							int alpha = hasAlpha ? data[index + alphaOffset] & 0xFF : 0xFF;
+							buffer[i++] = (alpha << 24) | ((data[index + redOffset] & 0xFF) << 16) | ((data[index + greenOffset] & 0xFF) << 8) | (data[index + blueOffset] & 0xFF);
+						}
+					}
+				}
+			};
+		}
+		else
+		{
+			return new PixelSource()
+			{
+				@Override public int getWidth() { return width; }
+				@Override public int getHeight() { return height; }
+
+				@Override
+				public int getPixel(int x, int y)
+				{
+					return image.getRGB(x, y);
+				}
+
+				@Override
+				public void readRows(int y, int rows, int[] buffer)
+				{
+					image.getRGB(0, y, width, rows, buffer, 0, width);
+				}
+			};
+		}
+	}
+
+	/**
+	 * Returns a source that reads roughly the given fraction of the pixels from another source, and no more than about {@code maxSamples} pixels.
+	 * Without the cap, the time taken still grows with the size of the image; with it, very large images take about as long as smaller ones.
+	 * The source is divided into square cells, and one pixel is read from each cell at a fixed pseudo-random offset.
+	 * This keeps regular patterns in the image, such as pixel-art dithering, from lining up with the samples.
+	 * @param source The source to sample.
+	 * @param fraction The fraction of pixels to read, between 0 and 1.
+	 * @param maxSamples The most pixels to read, or 0 for no limit.
+	 */
+	static PixelSource sampled(PixelSource source, float fraction, int maxSamples)
+	{
+		final int sourceWidth = source.getWidth();
+		final int sourceHeight = source.getHeight();
+
+		int fractionStep = fraction >= 1.0f ? 1 : Math.max(1, Math.round(1.0f / (float)Math.sqrt(Math.max(fraction, 1.0e-6f))));
+
+		// Widen the cells until the number of cells is within the limit.
+		int capStep = 1;
+		if (maxSamples > 0)
+		{
+			capStep = Math.max(1, (int)Math.ceil(Math.sqrt((double)sourceWidth * sourceHeight / maxSamples)));
+			while (capStep < Math.max(sourceWidth, sourceHeight) &&
+				   (long)((sourceWidth + capStep - 1) / capStep) * ((sourceHeight + capStep - 1) / capStep) > maxSamples)
+			{
+				capStep++;
+			}
+		}
+
+		final int step = Math.max(fractionStep, capStep);
+		if (step == 1)
+		{
+			return source;
+		}
+
+		final int width = (sourceWidth + step - 1) / step;
+		final int height = (sourceHeight + step - 1) / step;
+		return new PixelSource()
+		{
+			@Override public int getWidth() { return width; }
+			@Override public int getHeight() { return height; }
+
+			@Override
+			public int getPixel(int x, int y)
+			{
+				int hash = (x * 0x9E3779B9) ^ (y * 0x85EBCA6B);
+				hash ^= hash >>> 15;
+				hash *= 0x2C1B3C6D;
+				hash ^= hash >>> 12;
+
+				// Cells on the right and bottom edges may be smaller than the others.
+				final int cellX = x * step;
+				final int cellY = y * step;
+				return source.getPixel(cellX + Integer.remainderUnsigned(hash & 0xFFFF, Math.min(step, sourceWidth - cellX)),
+									   cellY + Integer.remainderUnsigned(hash >>> 16, Math.min(step, sourceHeight - cellY)));
+			}
+
+			@Override
+			public void readRows(int y, int rows, int[] buffer)
+			{
+				int i = 0;
+				for (int row = 0; row < rows; row++)
+				{
+					for (int x = 0; x < width; x++)
+					{
+						buffer[i++] = getPixel(x, y + row);
+					}
+				}
+			}
+		};
+	}
+}
@@ -10,11 +10,12 @@ import com.google.common.collect.Maps;
 
 public class WebColors
 {
-	private static final Map<String, IColor> webColorMap;
+	private static final Map<String, DynamicColor> webColorMap;
+	private static final String[] sortedNames;
 
 	static
 	{
-		Map<String, IColor> loadedColors = Maps.newHashMap();
+		Map<String, DynamicColor> loadedColors = Maps.newHashMap();
 
 		// Load the HTML colors.
 		try (BufferedReader reader = new BufferedReader(new InputStreamReader(WebColors.class.getClassLoader().getResourceAsStream("webcolors.csv")));)
@@ -26,7 +27,7 @@ public class WebColors
 				{
 					final String name = components[0];
 					final int value = Integer.parseUnsignedInt(components[1], 16);
-					loadedColors.put(ConfigHelper.formatColorName(name), new IColor()
+					loadedColors.put(ConfigHelper.formatColorName(name), DynamicColor.shared(new IColor()
 					{
 						@Override
 						public String getName() { return name; }
@@ -36,23 +37,36 @@ public class WebColors
 
 						@Override
 						public boolean isAnimated() { return false; }
-					});
+					}));
 				}
 			}
 		}
 		catch (IOException e) {}
 
 		webColorMap = Map.copyOf(loadedColors);
+		sortedNames = loadedColors.keySet().stream().sorted().toArray(String[]::new);
 	}
 
 	public static IColor getColor(String colorName)
 	{
 		colorName = ConfigHelper.formatColorName(colorName);
-		IColor result = null;
-		if (webColorMap.containsKey(colorName))
-		{
-			result = DynamicColor.fromColor(webColorMap.get(colorName));
-		}
-		return result;
+		DynamicColor color = webColorMap.get(colorName);
+		return color != null ? color.copy() : null;
+	}
+
+	/**
+	 * Returns the color with the given name, which must already be formatted with {@link ConfigHelper#formatColorName}.
+	 */
+	static IColor getFormattedColor(String formattedName)
+	{
+		return webColorMap.get(formattedName);
+	}
+
+	/**
+	 * Returns true if there is a color with the given name, which must already be formatted with {@link ConfigHelper#formatColorName}.
+	 */
+	static boolean isFormattedColorName(char[] name, int length)
+	{
+		return ConfigHelper.containsColorName(sortedNames, name, length);
 	}
 }
@@ -0,0 +1,98 @@
+package com.anthonyhilyard.prism.util;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.jupiter.api.Test;
+
+import net.minecraft.network.chat.TextColor;
+
+/**
+ * Checks that histograms built from tiles in parallel and then merged are identical to histograms built on a single thread.
+ */
+public class ParallelAnalysisTest
+{
+	private static final int IMAGES = 8;
+	private static final int PALETTE_SIZE = 64;
+
+	@Test
+	public void parallelHistogramsMatchSerial()
+	{
+		assumeTrue(ForkJoinPool.getCommonPoolParallelism() > 1, "the common pool only has one thread");
+
+		try
+		{
+			for (int i = 0; i < IMAGES; i++)
+			{
+				// Sizes that split into uneven tiles, including some rows that aren't a power of two.
+				BufferedImage image = createImage(i, 512 + i * 37, 384 + i * 61);
+				PixelSource source = PixelSource.of(image);
+				for (boolean degrade : new boolean[] { false, true })
+				{
+					ImageAnalysis.setParallelThreshold(Integer.MAX_VALUE);
+					ColorHistogram serial = ImageAnalysis.buildHistogram(source, degrade);
+					TextColor serialColor = ImageAnalysis.getDominantColor(image);
+
+					ImageAnalysis.setParallelThreshold(1);
+					ColorHistogram parallel = ImageAnalysis.buildHistogram(source, degrade);
+					TextColor parallelColor = ImageAnalysis.getDominantColor(image);
+
+					String message = "image " + i + (degrade ? " degraded" : "");
+					assertEquals(serial.size(), parallel.size(), message);
+					assertArrayEquals(getSortedScores(serial), getSortedScores(parallel), message);
+					assertEquals(serial.getDominantColor(), parallel.getDominantColor(), message);
+					assertEquals(serialColor != null ? serialColor.getValue() : 0, parallelColor != null ? parallelColor.getValue() : 0, message);
+				}
+			}
+		}
+		finally
+		{
+			ImageAnalysis.setParallelThreshold(256 * 256);
+		}
+	}
+
+	private static BufferedImage createImage(int seed, int width, int height)
+	{
+		// Pixels are picked from a small palette, so colors repeat across tiles and counts have to be merged, with a few unique colors mixed in.
+		Random random = new Random(seed);
+		int[] palette = new int[PALETTE_SIZE];
+		for (int i = 0; i < PALETTE_SIZE; i++)
+		{
+			palette[i] = random.nextInt();
+		}
+
+		BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+		for (int y = 0; y < height; y++)
+		{
+			for (int x = 0; x < width; x++)
+			{
+				image.setRGB(x, y, random.nextInt(100) == 0 ? random.nextInt() : palette[(int)Math.abs(random.nextGaussian() * PALETTE_SIZE / 4) % PALETTE_SIZE]);
+			}
+		}
+		return image;
+	}
+
+	/**
+	 * Returns each weighted color and its score as pairs sorted by color, since the order of colors in a histogram depends on how it was built.
+	 */
+	private static long[] getSortedScores(ColorHistogram histogram)
+	{
+		int[] colors = new int[histogram.size()];
+		float[] scores = new float[histogram.size()];
+		int count = histogram.getWeightedColors(colors, scores);
+
+		long[] pairs = new long[count];
+		for (int i = 0; i < count; i++)
+		{
+			pairs[i] = ((long)colors[i] << 32) | (Float.floatToIntBits(scores[i]) & 0xFFFFFFFFL);
+		}
+		Arrays.sort(pairs);
+		return pairs;
+	}
+}
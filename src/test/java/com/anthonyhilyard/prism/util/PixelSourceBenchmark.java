@@ -0,0 +1,97 @@
+package com.anthonyhilyard.prism.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+/**
+ * Times reading every pixel of large images one at a time with getRGB against reading them in bulk through PixelSource.
+ * Timing depends on the machine, so this only runs when asked for, with "gradlew test -Dprism.benchmark=true".
+ */
+@EnabledIfSystemProperty(named = "prism.benchmark", matches = "true")
+public class PixelSourceBenchmark
+{
+	private static final int SIZE = 1024;
+	private static final int WARMUP_RUNS = 5;
+	private static final int RUNS = 15;
+
+	@Test
+	public void compareWithGetRGB()
+	{
+		for (int type : new int[] { BufferedImage.TYPE_INT_ARGB, BufferedImage.TYPE_4BYTE_ABGR, BufferedImage.TYPE_3BYTE_BGR, BufferedImage.TYPE_BYTE_INDEXED })
+		{
+			BufferedImage image = new BufferedImage(SIZE, SIZE, type);
+			Random random = new Random(type);
+			for (int y = 0; y < SIZE; y++)
+			{
+				for (int x = 0; x < SIZE; x++)
+				{
+					image.setRGB(x, y, random.nextInt());
+				}
+			}
+
+			// Both paths sum the pixels they read, so neither can be optimized away and the results can be checked against each other.
+			assertEquals(readPerPixel(image), readBulk(image), "type " + type);
+
+			long perPixel = medianNanos(() -> readPerPixel(image));
+			long bulk = medianNanos(() -> readBulk(image));
+			System.out.printf("Type %2d: getRGB %6.2f ns/pixel, PixelSource %6.2f ns/pixel, %5.1fx faster%n",
+							  type, (double)perPixel / (SIZE * SIZE), (double)bulk / (SIZE * SIZE), (double)perPixel / bulk);
+		}
+	}
+
+	private static long readPerPixel(BufferedImage image)
+	{
+		long sum = 0;
+		for (int y = 0; y < image.getHeight(); y++)
+		{
+			for (int x = 0; x < image.getWidth(); x++)
+			{
+				sum += image.getRGB(x, y);
+			}
+		}
+		return sum;
+	}
+
+	private static long readBulk(BufferedImage image)
+	{
+		// Read in bands of rows, the same way image analysis does.
+		PixelSource source = PixelSource.of(image);
+		int rows = Math.max(1, 4096 / source.getWidth());
+		int[] buffer = new int[rows * source.getWidth()];
+		long sum = 0;
+		for (int y = 0; y < source.getHeight(); y += rows)
+		{
+			int count = Math.min(rows, source.getHeight() - y);
+			source.readRows(y, count, buffer);
+			for (int i = 0; i < count * source.getWidth(); i++)
+			{
+				sum += buffer[i];
+			}
+		}
+		return sum;
+	}
+
+	private static long medianNanos(Runnable task)
+	{
+		for (int i = 0; i < WARMUP_RUNS; i++)
+		{
+			task.run();
+		}
+
+		long[] times = new long[RUNS];
+		for (int i = 0; i < RUNS; i++)
+		{
+			long startTime = System.nanoTime();
+			task.run();
+			times[i] = System.nanoTime() - startTime;
+		}
+		Arrays.sort(times);
+		return times[RUNS / 2];
+	}
+}
@@ -0,0 +1,99 @@
+package com.anthonyhilyard.prism.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.awt.image.BufferedImage;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks that reading BufferedImages in bulk gives exactly the same pixels as reading them one at a time with getRGB.
+ */
+public class PixelSourceTest
+{
+	private static final int[] IMAGE_TYPES = {
+		BufferedImage.TYPE_INT_ARGB,
+		BufferedImage.TYPE_INT_ARGB_PRE,
+		BufferedImage.TYPE_INT_RGB,
+		BufferedImage.TYPE_INT_BGR,
+		BufferedImage.TYPE_4BYTE_ABGR,
+		BufferedImage.TYPE_4BYTE_ABGR_PRE,
+		BufferedImage.TYPE_3BYTE_BGR,
+		BufferedImage.TYPE_BYTE_INDEXED,
+		BufferedImage.TYPE_BYTE_BINARY,
+		BufferedImage.TYPE_BYTE_GRAY,
+		BufferedImage.TYPE_USHORT_GRAY,
+		BufferedImage.TYPE_USHORT_565_RGB,
+		BufferedImage.TYPE_USHORT_555_RGB
+	};
+
+	@Test
+	public void bulkReadsMatchGetRGB()
+	{
+		for (int type : IMAGE_TYPES)
+		{
+			BufferedImage image = createImage(type, 37, 23, type);
+			assertMatchesGetRGB(image, "type " + type);
+		}
+	}
+
+	@Test
+	public void bulkReadsOfSubimagesMatchGetRGB()
+	{
+		for (int type : IMAGE_TYPES)
+		{
+			BufferedImage image = createImage(type, 37, 23, type).getSubimage(5, 3, 19, 11);
+			assertMatchesGetRGB(image, "subimage of type " + type);
+		}
+	}
+
+	private static BufferedImage createImage(int type, int width, int height, long seed)
+	{
+		BufferedImage image = new BufferedImage(width, height, type);
+		Random random = new Random(seed);
+		for (int y = 0; y < height; y++)
+		{
+			for (int x = 0; x < width; x++)
+			{
+				// Include fully transparent and fully opaque pixels, which are handled specially by premultiplied formats.
+				int alpha = switch (random.nextInt(4)) { case 0 -> 0; case 1 -> 0xFF; default -> random.nextInt(256); };
+				image.setRGB(x, y, (alpha << 24) | random.nextInt(0x1000000));
+			}
+		}
+		return image;
+	}
+
+	private static void assertMatchesGetRGB(BufferedImage image, String description)
+	{
+		final int width = image.getWidth();
+		final int height = image.getHeight();
+		final PixelSource source = PixelSource.of(image);
+		assertEquals(width, source.getWidth(), description + " width");
+		assertEquals(height, source.getHeight(), description + " height");
+
+		// Read all rows at once, and also in uneven chunks that don't start at the first row.
+		int[] allRows = new int[width * height];
+		source.readRows(0, height, allRows);
+		int[] chunk = new int[width * 4];
+		for (int y = 0; y < height; y += 3)
+		{
+			int rows = Math.min(3, height - y);
+			source.readRows(y, rows, chunk);
+			for (int i = 0; i < rows * width; i++)
+			{
+				assertEquals(allRows[y * width + i], chunk[i], description + " chunked row " + (y + i / width));
+			}
+		}
+
+		for (int y = 0; y < height; y++)
+		{
+			for (int x = 0; x < width; x++)
+			{
+				String pixel = description + " pixel (" + x + ", " + y + ")";
+				assertEquals(image.getRGB(x, y), allRows[y * width + x], pixel);
+				assertEquals(image.getRGB(x, y), source.getPixel(x, y), pixel);
+			}
+		}
+	}
+}
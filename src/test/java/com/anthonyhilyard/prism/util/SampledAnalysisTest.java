@@ -0,0 +1,150 @@
+package com.anthonyhilyard.prism.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import net.minecraft.network.chat.TextColor;
+
+/**
+ * Compares dominant colors found by sampling a fraction of an image's pixels with those found by analyzing every pixel.
+ */
+public class SampledAnalysisTest
+{
+	private static final int IMAGES = 200;
+	private static final int SIZE = 192;
+
+	// Pixels vary from their block's color by up to this much in each channel.
+	private static final int NOISE = 3;
+
+	// The fraction of images whose sampled color must match the full analysis.  Sampling is only meant for images where one color
+	// clearly dominates, so a few images with two colors covering about the same area are allowed to pick the other one.
+	private static final float MIN_MATCH_RATE = 0.95f;
+
+	@Test
+	public void sampledColorsUsuallyMatchFullAnalysis()
+	{
+		// Each image is a few large blocks of color with per-pixel noise, which is typical of item and block textures scaled up.
+		// Results match if they're the same color apart from noise, meaning each channel is within twice the noise of the full analysis.
+		// When this was written, 100% of images matched at 1/4 and 99% matched at 1/16 and 1/64.
+		assertMatches(1.0f / 4.0f);
+		assertMatches(1.0f / 16.0f);
+		assertMatches(1.0f / 64.0f);
+	}
+
+	@Test
+	public void sampleCountIsLimited()
+	{
+		for (int size : new int[] { 100, 1000, 4000, 16384 })
+		{
+			PixelSource source = PixelSource.sampled(new SolidSource(size, size / 3 + 1), 0.25f, 65536);
+			long samples = (long)source.getWidth() * source.getHeight();
+			assertTrue(samples <= 65536, size + " pixel wide image read " + samples + " samples");
+
+			// The limit only lowers the fraction, so small images still read about a quarter of their pixels.
+			if (size == 100)
+			{
+				assertEquals(50 * 17, (int)samples, "samples for small image");
+			}
+		}
+	}
+
+	@Test
+	public void fullFractionReadsEveryPixel()
+	{
+		PixelSource source = new SolidSource(300, 200);
+		assertSame(source, PixelSource.sampled(source, 1.0f, 0));
+	}
+
+	private static void assertMatches(float fraction)
+	{
+		int matches = 0;
+		for (int i = 0; i < IMAGES; i++)
+		{
+			BufferedImage image = createImage(i);
+			TextColor fullColor = ImageAnalysis.getDominantColor(image);
+			TextColor sampledColor = ImageAnalysis.getDominantColor(image, fraction, 0);
+			if (fullColor != null && sampledColor != null && getChannelDifference(fullColor.getValue(), sampledColor.getValue()) <= NOISE * 2)
+			{
+				matches++;
+			}
+		}
+		assertTrue(matches >= IMAGES * MIN_MATCH_RATE, "only " + matches + " of " + IMAGES + " images matched when sampling " + fraction + " of pixels");
+	}
+
+	private static BufferedImage createImage(long seed)
+	{
+		Random random = new Random(seed);
+		int[] palette = new int[2 + random.nextInt(3)];
+		for (int i = 0; i < palette.length; i++)
+		{
+			palette[i] = 0xFF000000 | random.nextInt(0x1000000);
+		}
+
+		// Blocks are picked with uneven weights, so usually one color covers more of the image than the others.
+		int blockSize = 8 << random.nextInt(3);
+		BufferedImage image = new BufferedImage(SIZE, SIZE, BufferedImage.TYPE_INT_ARGB);
+		for (int blockY = 0; blockY < SIZE; blockY += blockSize)
+		{
+			for (int blockX = 0; blockX < SIZE; blockX += blockSize)
+			{
+				int color = palette[Math.min(palette.length - 1, (int)(palette.length * random.nextFloat() * random.nextFloat()))];
+				for (int y = blockY; y < blockY + blockSize; y++)
+				{
+					for (int x = blockX; x < blockX + blockSize; x++)
+					{
+						image.setRGB(x, y, addNoise(color, random));
+					}
+				}
+			}
+		}
+		return image;
+	}
+
+	private static int addNoise(int color, Random random)
+	{
+		int noise = random.nextInt(NOISE * 2 + 1) - NOISE;
+		int red = Math.max(0, Math.min(255, ((color >> 16) & 0xFF) + noise));
+		int green = Math.max(0, Math.min(255, ((color >> 8) & 0xFF) + noise));
+		int blue = Math.max(0, Math.min(255, (color & 0xFF) + noise));
+		return 0xFF000000 | (red << 16) | (green << 8) | blue;
+	}
+
+	private static int getChannelDifference(int first, int second)
+	{
+		int difference = Math.abs(((first >> 24) & 0xFF) - ((second >> 24) & 0xFF));
+		for (int shift = 0; shift < 24; shift += 8)
+		{
+			difference = Math.max(difference, Math.abs(((first >> shift) & 0xFF) - ((second >> shift) & 0xFF)));
+		}
+		return difference;
+	}
+
+	private static final class SolidSource implements PixelSource
+	{
+		private final int width;
+		private final int height;
+
+		private SolidSource(int width, int height)
+		{
+			this.width = width;
+			this.height = height;
+		}
+
+		@Override public int getWidth() { return width; }
+		@Override public int getHeight() { return height; }
+		@Override public int getPixel(int x, int y) { return 0xFFFFFFFF; }
+
+		@Override
+		public void readRows(int y, int rows, int[] buffer)
+		{
+			Arrays.fill(buffer, 0, rows * width, 0xFFFFFFFF);
+		}
+	}
+}